@@ -1,7 +1,13 @@
 package io.github.mcallistertyler.event.weather.api;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -14,4 +20,15 @@ public class EventWeatherApiApplicationConfig {
                 .callTimeout(Duration.ofSeconds(5))
                 .build();
     }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService routeForecastExecutor(@Value("${api.route.fetch-threads}") int fetchThreads,
+                                                 @Value("${api.route.fetch-queue-capacity}") int fetchQueueCapacity) {
+        return new ThreadPoolExecutor(fetchThreads, fetchThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fetchQueueCapacity),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("route-forecast-%d")
+                        .setDaemon(true)
+                        .build());
+    }
 }
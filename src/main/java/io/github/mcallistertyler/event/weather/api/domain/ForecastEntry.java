@@ -0,0 +1,12 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import java.time.Instant;
+
+/**
+ * A single entry in a forecast response, either a full {@link WeatherData} or a {@link ProjectedWeatherData}
+ * holding only the fields asked for.
+ */
+public interface ForecastEntry {
+
+    Instant time();
+}
@@ -0,0 +1,82 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Fields that can be read from a MET timeseries entry. Fields with several paths use the first one present,
+ * so period values come from the shortest period MET provides for that time.
+ */
+public enum ForecastField {
+    WIND_SPEED("wind_speed", "windSpeed", Type.NUMBER,
+            "/data/instant/details/wind_speed"),
+    AIR_TEMPERATURE("air_temperature", "airTemperature", Type.NUMBER,
+            "/data/instant/details/air_temperature"),
+    WIND_FROM_DIRECTION("wind_from_direction", "windFromDirection", Type.NUMBER,
+            "/data/instant/details/wind_from_direction"),
+    WIND_SPEED_OF_GUST("wind_speed_of_gust", "windSpeedOfGust", Type.NUMBER,
+            "/data/instant/details/wind_speed_of_gust"),
+    RELATIVE_HUMIDITY("relative_humidity", "relativeHumidity", Type.NUMBER,
+            "/data/instant/details/relative_humidity"),
+    AIR_PRESSURE_AT_SEA_LEVEL("air_pressure_at_sea_level", "airPressureAtSeaLevel", Type.NUMBER,
+            "/data/instant/details/air_pressure_at_sea_level"),
+    CLOUD_AREA_FRACTION("cloud_area_fraction", "cloudAreaFraction", Type.NUMBER,
+            "/data/instant/details/cloud_area_fraction"),
+    DEW_POINT_TEMPERATURE("dew_point_temperature", "dewPointTemperature", Type.NUMBER,
+            "/data/instant/details/dew_point_temperature"),
+    PRECIPITATION_AMOUNT("precipitation_amount", "precipitationAmount", Type.NUMBER,
+            "/data/next_1_hours/details/precipitation_amount",
+            "/data/next_6_hours/details/precipitation_amount"),
+    SYMBOL_CODE("symbol_code", "symbolCode", Type.TEXT,
+            "/data/next_1_hours/summary/symbol_code",
+            "/data/next_6_hours/summary/symbol_code",
+            "/data/next_12_hours/summary/symbol_code");
+
+    public enum Type {
+        NUMBER,
+        TEXT
+    }
+
+    private final String metName;
+    private final String jsonName;
+    private final Type type;
+    private final List<JsonPointer> paths;
+
+    ForecastField(String metName, String jsonName, Type type, String... paths) {
+        this.metName = metName;
+        this.jsonName = jsonName;
+        this.type = type;
+        this.paths = Arrays.stream(paths).map(JsonPointer::compile).toList();
+    }
+
+    public String getMetName() {
+        return metName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<JsonPointer> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Wind speed and air temperature are always parsed into {@link WeatherData} itself.
+     */
+    public boolean isCore() {
+        return this == WIND_SPEED || this == AIR_TEMPERATURE;
+    }
+
+    public static Optional<ForecastField> fromMetName(String metName) {
+        return Arrays.stream(values())
+                .filter(field -> field.metName.equals(metName))
+                .findFirst();
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The extended fields of a forecast, kept as one compact column per field rather than as objects per entry.
+ * Numbers are held in a {@code double[]} with NaN for missing values and text in an array of interned strings.
+ * Values are only boxed when a caller asks for them, so fields that nobody requests cost one array each.
+ */
+public final class ForecastFieldValues {
+
+    public static final ForecastFieldValues EMPTY = new ForecastFieldValues(new EnumMap<>(ForecastField.class));
+
+    private final EnumMap<ForecastField, Object> columns;
+
+    private ForecastFieldValues(EnumMap<ForecastField, Object> columns) {
+        this.columns = columns;
+    }
+
+    public static ForecastFieldValues extract(List<JsonNode> timeSeriesJsonNodes, Set<ForecastField> fields) {
+        EnumMap<ForecastField, Object> columns = new EnumMap<>(ForecastField.class);
+        for (ForecastField field : fields) {
+            if (field.isCore()) {
+                continue;
+            }
+            if (field.getType() == ForecastField.Type.NUMBER) {
+                double[] values = new double[timeSeriesJsonNodes.size()];
+                for (int row = 0; row < values.length; row++) {
+                    JsonNode value = firstPresent(field, timeSeriesJsonNodes.get(row));
+                    values[row] = value == null ? Double.NaN : value.asDouble();
+                }
+                columns.put(field, values);
+            } else {
+                String[] values = new String[timeSeriesJsonNodes.size()];
+                for (int row = 0; row < values.length; row++) {
+                    JsonNode value = firstPresent(field, timeSeriesJsonNodes.get(row));
+                    values[row] = value == null ? null : value.asText().intern();
+                }
+                columns.put(field, values);
+            }
+        }
+        return columns.isEmpty() ? EMPTY : new ForecastFieldValues(columns);
+    }
+
+    /**
+     * Builds field values from columns that were already decoded, such as those read back from the off-heap store.
+     * Columns must be a {@code double[]} for number fields and a {@code String[]} for text fields.
+     */
+    public static ForecastFieldValues ofColumns(Map<ForecastField, Object> columns) {
+        return columns.isEmpty() ? EMPTY : new ForecastFieldValues(new EnumMap<>(columns));
+    }
+
+    private static JsonNode firstPresent(ForecastField field, JsonNode timeSeriesJsonNode) {
+        for (JsonPointer path : field.getPaths()) {
+            JsonNode value = timeSeriesJsonNode.at(path);
+            if (!value.isMissingNode() && !value.isNull()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    public Set<ForecastField> fields() {
+        return Collections.unmodifiableSet(columns.keySet());
+    }
+
+    public boolean contains(ForecastField field) {
+        return columns.containsKey(field);
+    }
+
+    public Object column(ForecastField field) {
+        return columns.get(field);
+    }
+
+    /**
+     * Decodes a single value, returning null when the field is not held or has no value for the entry.
+     */
+    public Object value(ForecastField field, int row) {
+        Object column = columns.get(field);
+        if (column instanceof double[] numbers) {
+            return Double.isNaN(numbers[row]) ? null : numbers[row];
+        }
+        if (column instanceof String[] texts) {
+            return texts[row];
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ForecastFieldValues oFieldValues = (ForecastFieldValues) o;
+        if (!columns.keySet().equals(oFieldValues.columns.keySet())) {
+            return false;
+        }
+        for (Map.Entry<ForecastField, Object> column : columns.entrySet()) {
+            if (!Objects.deepEquals(column.getValue(), oFieldValues.columns.get(column.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (Map.Entry<ForecastField, Object> column : columns.entrySet()) {
+            Object values = column.getValue();
+            int valuesHash = values instanceof double[] numbers ? Arrays.hashCode(numbers) : Arrays.hashCode((Object[]) values);
+            hash = 31 * hash + column.getKey().ordinal() + valuesHash;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ForecastFieldValues{fields=" + columns.keySet() + "}";
+    }
+}
@@ -8,8 +8,13 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,14 +23,32 @@ public record MetForecastResponse(
         Instant updatedAt,
         String lastModifiedHeader,
         String expiresHeader,
-        List<WeatherData> weatherDataList
+        List<WeatherData> weatherDataList,
+        ForecastFieldValues fieldValues
 ) {
 
     private static final Logger log = LoggerFactory.getLogger(MetForecastResponse.class);
 
+    public static final Set<ForecastField> DEFAULT_FIELDS = EnumSet.of(ForecastField.WIND_SPEED, ForecastField.AIR_TEMPERATURE);
+
+    public MetForecastResponse(Instant updatedAt, String lastModifiedHeader, String expiresHeader, List<WeatherData> weatherDataList) {
+        this(updatedAt, lastModifiedHeader, expiresHeader, weatherDataList, ForecastFieldValues.EMPTY);
+    }
+
     public static Optional<MetForecastResponse> parseMetResponse(JsonNode jsonNode,
                                                                  String lastModified,
                                                                  String expires) {
+        return parseMetResponse(jsonNode, lastModified, expires, DEFAULT_FIELDS);
+    }
+
+    /**
+     * Parses the response keeping the given extended fields alongside wind speed and air temperature, which are
+     * always parsed.
+     */
+    public static Optional<MetForecastResponse> parseMetResponse(JsonNode jsonNode,
+                                                                 String lastModified,
+                                                                 String expires,
+                                                                 Set<ForecastField> fields) {
         JsonNode updatedAtString = jsonNode.at("/properties/meta/updated_at");
         ArrayNode timeSeriesArrayNode = jsonNode.withArray("/properties/timeseries");
         if (updatedAtString.isMissingNode() || timeSeriesArrayNode.isMissingNode()) {
@@ -34,11 +57,17 @@ public record MetForecastResponse(
         }
         Instant updatedAt = Instant.parse(updatedAtString.asText());
 
-        JsonPointer windSpeedPath = JsonPointer.compile("/data/instant/details/wind_speed");
-        JsonPointer airTemperaturePath = JsonPointer.compile("/data/instant/details/air_temperature");
+        JsonPointer windSpeedPath = ForecastField.WIND_SPEED.getPaths().get(0);
+        JsonPointer airTemperaturePath = ForecastField.AIR_TEMPERATURE.getPaths().get(0);
 
-        List<WeatherData> weatherDataList = new ArrayList<>(timeSeriesArrayNode.size());
-        timeSeriesArrayNode.forEach(timeSeriesJsonNode -> {
+        // MET times are all UTC in the same ISO-8601 format so they sort as text. This is a single pass when
+        // the timeseries is already in order, which it normally is.
+        List<JsonNode> timeSeriesJsonNodes = new ArrayList<>(timeSeriesArrayNode.size());
+        timeSeriesArrayNode.forEach(timeSeriesJsonNodes::add);
+        timeSeriesJsonNodes.sort(Comparator.comparing(timeSeriesJsonNode -> timeSeriesJsonNode.at("/time").asText()));
+
+        List<WeatherData> weatherDataList = new ArrayList<>(timeSeriesJsonNodes.size());
+        timeSeriesJsonNodes.forEach(timeSeriesJsonNode -> {
             String occurrenceString = timeSeriesJsonNode.at("/time").asText();
             Instant occurrence = Instant.parse(occurrenceString);
             Double windSpeed = getWeatherDataFromPath(windSpeedPath, timeSeriesJsonNode);
@@ -48,7 +77,8 @@ public record MetForecastResponse(
         MetForecastResponse metForecastResponse = new MetForecastResponse(updatedAt,
                 lastModified,
                 expires,
-                weatherDataList);
+                weatherDataList,
+                ForecastFieldValues.extract(timeSeriesJsonNodes, fields));
         return Optional.of(metForecastResponse);
     }
 
@@ -61,6 +91,61 @@ public record MetForecastResponse(
         return weatherDataPath.asDouble();
     }
 
+    /**
+     * Returns the entry at the given index with only the requested fields that have a value. Extended fields are
+     * only decoded when asked for.
+     */
+    public ProjectedWeatherData projectWeatherData(int index, Set<ForecastField> fields) {
+        WeatherData weatherData = this.weatherDataList().get(index);
+        Map<String, Object> projectedFields = new LinkedHashMap<>();
+        for (ForecastField field : fields) {
+            Object value = switch (field) {
+                case WIND_SPEED -> weatherData.windSpeed();
+                case AIR_TEMPERATURE -> weatherData.airTemperature();
+                default -> this.fieldValues().value(field, index);
+            };
+            if (value != null) {
+                projectedFields.put(field.getJsonName(), value);
+            }
+        }
+        return new ProjectedWeatherData(weatherData.time(), projectedFields);
+    }
+
+    /**
+     * Finds the index of the entry closest to the given time with a binary search, relying on the list being ordered
+     * by time as it is after {@link #parseMetResponse}. Returns -1 when there are no entries.
+     */
+    public int nearestWeatherDataIndex(Instant time) {
+        List<WeatherData> weatherData = this.weatherDataList();
+        if (weatherData.isEmpty()) {
+            return -1;
+        }
+        int low = 0;
+        int high = weatherData.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (weatherData.get(mid).time().isBefore(time)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // low is now the first entry at or after the time, or the last entry if all are before it
+        if (low > 0) {
+            Duration before = Duration.between(weatherData.get(low - 1).time(), time).abs();
+            Duration after = Duration.between(time, weatherData.get(low).time()).abs();
+            if (before.compareTo(after) <= 0) {
+                return low - 1;
+            }
+        }
+        return low;
+    }
+
+    public Optional<WeatherData> nearestWeatherData(Instant time) {
+        int index = nearestWeatherDataIndex(time);
+        return index < 0 ? Optional.empty() : Optional.of(this.weatherDataList().get(index));
+    }
+
     public boolean isDataFresh() {
         Instant updatedAt = this.updatedAt();
         Instant expiresTime = httpDateHeaderToInstant(this.expiresHeader());
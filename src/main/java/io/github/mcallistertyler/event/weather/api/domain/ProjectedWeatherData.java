@@ -0,0 +1,18 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A forecast entry with only the fields requested through {@code fields=}, keyed by their json name. Fields
+ * without a value for the entry are left out.
+ */
+public record ProjectedWeatherData(Instant time, @JsonIgnore Map<String, Object> fields) implements ForecastEntry {
+
+    @JsonAnyGetter
+    public Map<String, Object> jsonFields() {
+        return fields;
+    }
+}
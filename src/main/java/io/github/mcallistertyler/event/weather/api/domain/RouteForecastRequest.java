@@ -0,0 +1,11 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * An ordered route. Each waypoint either carries its own expected passing time or the passing times are
+ * worked out from {@code startDateTime} and {@code paceSecondsPerKm} along the route.
+ */
+public record RouteForecastRequest(List<Waypoint> waypoints, Instant startDateTime, Double paceSecondsPerKm) {
+}
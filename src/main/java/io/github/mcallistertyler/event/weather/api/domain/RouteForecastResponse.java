@@ -0,0 +1,6 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import java.util.List;
+
+public record RouteForecastResponse(List<RouteWaypointForecast> waypoints, String message, int code) {
+}
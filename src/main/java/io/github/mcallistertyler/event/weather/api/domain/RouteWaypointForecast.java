@@ -0,0 +1,6 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import java.time.Instant;
+
+public record RouteWaypointForecast(Double lat, Double lon, Instant expectedTime, WeatherData weatherData) {
+}
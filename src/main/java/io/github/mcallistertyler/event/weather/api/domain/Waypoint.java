@@ -0,0 +1,6 @@
+package io.github.mcallistertyler.event.weather.api.domain;
+
+import java.time.Instant;
+
+public record Waypoint(Double lat, Double lon, Instant expectedTime) {
+}
@@ -2,5 +2,5 @@ package io.github.mcallistertyler.event.weather.api.domain;
 
 import java.time.Instant;
 
-public record WeatherData(Instant time, Double windSpeed, Double airTemperature) {
+public record WeatherData(Instant time, Double windSpeed, Double airTemperature) implements ForecastEntry {
 }
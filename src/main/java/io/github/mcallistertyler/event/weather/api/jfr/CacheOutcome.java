@@ -0,0 +1,17 @@
+package io.github.mcallistertyler.event.weather.api.jfr;
+
+/**
+ * How a forecast lookup was resolved against the forecast cache.
+ */
+public enum CacheOutcome {
+    /** A fresh forecast was already cached. */
+    HIT,
+    /** A cached forecast existed but had expired, so a conditional refresh was attempted. */
+    STALE,
+    /** Nothing was cached and the current thread loaded the forecast from the MET api. */
+    MISS,
+    /** Nothing was cached when the lookup started, so it waited for another thread's in-flight load. */
+    COALESCED,
+    /** Loading or refreshing the forecast failed. Whatever was left in the cache, if anything, was returned. */
+    ERROR
+}
@@ -0,0 +1,48 @@
+package io.github.mcallistertyler.event.weather.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+@Name("io.github.mcallistertyler.ForecastCacheStatistics")
+@Label("Forecast Cache Statistics")
+@Category({"Event Weather API", "Forecast"})
+@Description("Periodic size and hit rate of the on-heap forecast cache and the off-heap forecast store")
+@Period("30 s")
+@StackTrace(false)
+public class ForecastCacheStatisticsEvent extends Event {
+
+    @Label("On-Heap Entries")
+    public long onHeapEntries;
+
+    @Label("On-Heap Hit Rate")
+    @Percentage
+    public double onHeapHitRate;
+
+    @Label("On-Heap Evictions")
+    public long onHeapEvictions;
+
+    @Label("Off-Heap Entries")
+    public long offHeapEntries;
+
+    @Label("Off-Heap Allocated")
+    @DataAmount
+    public long offHeapAllocated;
+
+    @Label("Off-Heap Hit Rate")
+    @Percentage
+    public double offHeapHitRate;
+
+    @Label("Off-Heap Evictions")
+    public long offHeapEvictions;
+
+    @Label("Off-Heap Rejected")
+    @Description("Forecasts too large to fit in a slab")
+    public long offHeapRejected;
+}
@@ -0,0 +1,42 @@
+package io.github.mcallistertyler.event.weather.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("io.github.mcallistertyler.ForecastLookup")
+@Label("Forecast Lookup")
+@Category({"Event Weather API", "Forecast"})
+@Description("A forecast lookup through both forecast cache tiers, including any upstream refresh")
+@StackTrace(false)
+public class ForecastLookupEvent extends Event {
+
+    @Label("Latitude")
+    public double latitude;
+
+    @Label("Longitude")
+    public double longitude;
+
+    @Label("Cache Outcome")
+    @Description("One of HIT, STALE, MISS, COALESCED or ERROR")
+    public String cacheOutcome;
+
+    @Label("Promoted From Off-Heap")
+    @Description("Whether the forecast was found in the off-heap store and moved back to the on-heap cache")
+    public boolean promotedFromOffHeap;
+
+    @Label("Cache Lookup Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long cacheLookupDuration;
+
+    @Label("Freshness Check Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long freshnessCheckDuration;
+
+    @Label("Forecast Returned")
+    public boolean forecastReturned;
+}
@@ -0,0 +1,31 @@
+package io.github.mcallistertyler.event.weather.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.github.mcallistertyler.ForecastRequest")
+@Label("Forecast Request")
+@Category({"Event Weather API", "HTTP"})
+@Description("A request handled by one of the forecast endpoints")
+@StackTrace(false)
+public class ForecastRequestEvent extends Event {
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Latitude")
+    public double latitude;
+
+    @Label("Longitude")
+    public double longitude;
+
+    @Label("HTTP Status")
+    public int httpStatus;
+
+    @Label("Weather Data Count")
+    public int weatherDataCount;
+}
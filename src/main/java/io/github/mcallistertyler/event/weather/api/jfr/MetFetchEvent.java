@@ -0,0 +1,46 @@
+package io.github.mcallistertyler.event.weather.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("io.github.mcallistertyler.MetFetch")
+@Label("MET Forecast Fetch")
+@Category({"Event Weather API", "MET"})
+@Description("A round-trip to the MET locationforecast api, including reading and parsing the response")
+@StackTrace(false)
+public class MetFetchEvent extends Event {
+
+    @Label("Latitude")
+    public double latitude;
+
+    @Label("Longitude")
+    public double longitude;
+
+    @Label("Conditional")
+    @Description("Whether the request carried an If-Modified-Since header")
+    public boolean conditional;
+
+    @Label("Upstream Status")
+    public int statusCode;
+
+    @Label("Response Size")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Read Tree Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long readTreeDuration;
+
+    @Label("Parse Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseDuration;
+
+    @Label("Parsed")
+    public boolean parsed;
+}
@@ -2,21 +2,43 @@ package io.github.mcallistertyler.event.weather.api.rest;
 
 import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
 import io.github.mcallistertyler.event.weather.api.domain.ApiForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastEntry;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastField;
 import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.RouteForecastRequest;
+import io.github.mcallistertyler.event.weather.api.domain.RouteForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.RouteWaypointForecast;
+import io.github.mcallistertyler.event.weather.api.domain.Waypoint;
 import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
+import io.github.mcallistertyler.event.weather.api.jfr.ForecastRequestEvent;
+import io.github.mcallistertyler.event.weather.api.service.Admission;
+import io.github.mcallistertyler.event.weather.api.service.ForecastAdmissionControl;
 import io.github.mcallistertyler.event.weather.api.service.MetForecastService;
+import io.github.mcallistertyler.event.weather.api.service.RouteForecastService;
+import jakarta.servlet.http.HttpServletRequest;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -27,10 +49,21 @@ public class ApiController {
 
     private static final Logger log = LoggerFactory.getLogger(ApiController.class);
 
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    @Value("${api.route.max-waypoints}")
+    private int maxRouteWaypoints;
+
     private final MetForecastService metForecastService;
+    private final ForecastAdmissionControl forecastAdmissionControl;
+    private final RouteForecastService routeForecastService;
 
-    public ApiController(MetForecastService metForecastService) {
+    public ApiController(MetForecastService metForecastService,
+                         ForecastAdmissionControl forecastAdmissionControl,
+                         RouteForecastService routeForecastService) {
         this.metForecastService = metForecastService;
+        this.forecastAdmissionControl = forecastAdmissionControl;
+        this.routeForecastService = routeForecastService;
     }
 
     @GetMapping(value="")
@@ -38,50 +71,160 @@ public class ApiController {
             @RequestParam("lat") double lat,
             @RequestParam("lon") double lon,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant startDateTime,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endDateTime
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endDateTime,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+            HttpServletRequest request
     ) {
+        ForecastRequestEvent requestEvent = new ForecastRequestEvent();
+        requestEvent.begin();
+        ResponseEntity<ApiForecastResponse> response = currentForecast(apiKey, request.getRemoteAddr(), lat, lon, startDateTime, endDateTime, fields);
+        return recordRequest(requestEvent, "/forecast", lat, lon, response, body -> body.weatherData().size());
+    }
+
+    @GetMapping(value="/extended")
+    public ResponseEntity<ApiForecastResponse> getForecastForTimespan(
+            @RequestParam("lat") double lat,
+            @RequestParam("lon") double lon,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant startDateTime,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endDateTime,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+            HttpServletRequest request
+    ) {
+        ForecastRequestEvent requestEvent = new ForecastRequestEvent();
+        requestEvent.begin();
+        ResponseEntity<ApiForecastResponse> response = forecastForTimespan(apiKey, request.getRemoteAddr(), lat, lon, startDateTime, endDateTime, fields);
+        return recordRequest(requestEvent, "/forecast/extended", lat, lon, response, body -> body.weatherData().size());
+    }
+
+    @PostMapping(value="/route")
+    public ResponseEntity<RouteForecastResponse> getRouteForecast(
+            @RequestBody RouteForecastRequest routeForecastRequest,
+            @RequestHeader(value = API_KEY_HEADER, required = false) String apiKey,
+            HttpServletRequest request
+    ) {
+        ForecastRequestEvent requestEvent = new ForecastRequestEvent();
+        requestEvent.begin();
+        ResponseEntity<RouteForecastResponse> response = routeForecast(apiKey, request.getRemoteAddr(), routeForecastRequest);
+        List<Waypoint> waypoints = routeForecastRequest.waypoints();
+        boolean hasStart = waypoints != null && !waypoints.isEmpty() && hasCoordinates(waypoints.get(0));
+        return recordRequest(requestEvent,
+                "/forecast/route",
+                hasStart ? waypoints.get(0).lat() : Double.NaN,
+                hasStart ? waypoints.get(0).lon() : Double.NaN,
+                response,
+                body -> (int) body.waypoints().stream().filter(waypoint -> waypoint.weatherData() != null).count());
+    }
+
+    private ResponseEntity<ApiForecastResponse> currentForecast(String apiKey, String remoteAddress, double lat, double lon, Instant startDateTime, Instant endDateTime, List<String> fieldNames) {
         if (!isWithinNextWeek(startDateTime)) {
             return invalidStartDateResponse();
         }
-
-        Optional<MetForecastResponse> forecastResponseOptional = getForecastForCoordinates(lat, lon);
-        if (forecastResponseOptional.isEmpty()) {
-            return emptyMetforecastResponse(lat, lon, startDateTime, endDateTime);
+        Optional<Set<ForecastField>> fieldsOptional = resolveFields(fieldNames);
+        if (fieldsOptional.isEmpty()) {
+            return invalidFieldsResponse(fieldNames);
         }
 
-        MetForecastResponse metForecastResponse = forecastResponseOptional.get();
-        ApiForecastResponse apiForecastResponse = createCurrentTimeResponse(metForecastResponse);
+        try (Admission admission = forecastAdmissionControl.admit(apiKey, remoteAddress, new Coordinates(lat, lon))) {
+            if (!admission.isAdmitted()) {
+                return shedResponse(admission, lat, lon);
+            }
+            Optional<MetForecastResponse> forecastResponseOptional = getForecastForCoordinates(lat, lon);
+            if (forecastResponseOptional.isEmpty()) {
+                return emptyMetforecastResponse(lat, lon, startDateTime, endDateTime);
+            }
 
-        if (apiForecastResponse.weatherData().isEmpty()) {
-            return noContentResponse(lat, lon, startDateTime, endDateTime);
-        }
+            MetForecastResponse metForecastResponse = forecastResponseOptional.get();
+            ApiForecastResponse apiForecastResponse = createCurrentTimeResponse(metForecastResponse, fieldsOptional.get());
 
-        return ResponseEntity.ok(apiForecastResponse);
+            if (apiForecastResponse.weatherData().isEmpty()) {
+                return noContentResponse(lat, lon, startDateTime, endDateTime);
+            }
+
+            return ResponseEntity.ok(apiForecastResponse);
+        }
     }
 
-    @GetMapping(value="/extended")
-    public ResponseEntity<ApiForecastResponse> getForecastForTimespan(
-            @RequestParam("lat") double lat,
-            @RequestParam("lon") double lon,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant startDateTime,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endDateTime
-    ) {
+    private ResponseEntity<ApiForecastResponse> forecastForTimespan(String apiKey, String remoteAddress, double lat, double lon, Instant startDateTime, Instant endDateTime, List<String> fieldNames) {
         if (!isWithinNextWeek(startDateTime)) {
             return invalidStartDateResponse();
         }
-        Optional<MetForecastResponse> forecastResponseOptional = getForecastForCoordinates(lat, lon);
-        if (forecastResponseOptional.isEmpty()) {
-            return emptyMetforecastResponse(lat, lon, startDateTime, endDateTime);
+        Optional<Set<ForecastField>> fieldsOptional = resolveFields(fieldNames);
+        if (fieldsOptional.isEmpty()) {
+            return invalidFieldsResponse(fieldNames);
+        }
+        try (Admission admission = forecastAdmissionControl.admit(apiKey, remoteAddress, new Coordinates(lat, lon))) {
+            if (!admission.isAdmitted()) {
+                return shedResponse(admission, lat, lon);
+            }
+            Optional<MetForecastResponse> forecastResponseOptional = getForecastForCoordinates(lat, lon);
+            if (forecastResponseOptional.isEmpty()) {
+                return emptyMetforecastResponse(lat, lon, startDateTime, endDateTime);
+            }
+
+            MetForecastResponse metForecastResponse = forecastResponseOptional.get();
+            ApiForecastResponse apiForecastResponse = createTimeRangeResponse(metForecastResponse, startDateTime, endDateTime, fieldsOptional.get());
+
+            if (apiForecastResponse.weatherData().isEmpty()) {
+                return noContentResponse(lat, lon, startDateTime, endDateTime);
+            }
+
+            return ResponseEntity.ok(apiForecastResponse);
+        }
+    }
+
+    private ResponseEntity<RouteForecastResponse> routeForecast(String apiKey, String remoteAddress, RouteForecastRequest routeForecastRequest) {
+        List<Waypoint> waypoints = routeForecastRequest.waypoints();
+        if (waypoints == null || waypoints.isEmpty() || waypoints.size() > maxRouteWaypoints) {
+            return invalidRouteResponse("A route must have between 1 and " + maxRouteWaypoints + " waypoints");
+        }
+        if (!waypoints.stream().allMatch(this::hasCoordinates)) {
+            return invalidRouteResponse("Each waypoint needs a lat and lon");
+        }
+
+        Optional<List<Instant>> passingTimesOptional = routeForecastService.expectedPassingTimes(routeForecastRequest);
+        if (passingTimesOptional.isEmpty()) {
+            return invalidRouteResponse("Each waypoint needs an expectedTime unless startDateTime and paceSecondsPerKm are given");
+        }
+        List<Instant> passingTimes = passingTimesOptional.get();
+        if (!passingTimes.stream().allMatch(this::isWithinNextWeek)) {
+            return invalidRouteResponse("Every waypoint must be passed within the next 7 days");
         }
 
-        MetForecastResponse metForecastResponse = forecastResponseOptional.get();
-        ApiForecastResponse apiForecastResponse = createTimeRangeResponse(metForecastResponse, startDateTime, endDateTime);
+        Set<Coordinates> locations = routeForecastService.uniqueLocations(waypoints);
+        try (Admission admission = forecastAdmissionControl.admitRoute(apiKey, remoteAddress, locations)) {
+            if (!admission.isAdmitted()) {
+                log.warn("Shedding route request for {} locations with decision {}", locations.size(), admission.decision());
+                return shedResponseBuilder(admission)
+                        .body(new RouteForecastResponse(Collections.emptyList(), shedMessage(admission), shedStatus(admission).value()));
+            }
 
-        if (apiForecastResponse.weatherData().isEmpty()) {
-            return noContentResponse(lat, lon, startDateTime, endDateTime);
+            List<RouteWaypointForecast> routeForecast = routeForecastService.getRouteForecast(waypoints, passingTimes);
+            if (routeForecast.stream().allMatch(waypoint -> waypoint.weatherData() == null)) {
+                log.error("Unable to retrieve response from met forecast api for any of the {} route locations", locations.size());
+                return ResponseEntity.badRequest().body(new RouteForecastResponse(Collections.emptyList(), "No forecast found for the route", 404));
+            }
+            return ResponseEntity.ok(new RouteForecastResponse(routeForecast, "OK", 200));
         }
+    }
 
-        return ResponseEntity.ok(apiForecastResponse);
+    private <T> ResponseEntity<T> recordRequest(ForecastRequestEvent requestEvent,
+                                                String endpoint,
+                                                double lat,
+                                                double lon,
+                                                ResponseEntity<T> response,
+                                                ToIntFunction<T> weatherDataCount) {
+        requestEvent.end();
+        if (requestEvent.shouldCommit()) {
+            requestEvent.endpoint = endpoint;
+            requestEvent.latitude = lat;
+            requestEvent.longitude = lon;
+            requestEvent.httpStatus = response.getStatusCode().value();
+            requestEvent.weatherDataCount = response.getBody() != null ? weatherDataCount.applyAsInt(response.getBody()) : 0;
+            requestEvent.commit();
+        }
+        return response;
     }
 
     public ResponseEntity<ApiForecastResponse> noContentResponse(double lat, double lon, Instant startDateTime, Instant endDateTime) {
@@ -94,6 +237,39 @@ public class ApiController {
         return ResponseEntity.badRequest().body(new ApiForecastResponse(Collections.emptyList(), "No forecast found for given lat/lon values", 404));
     }
 
+    public ResponseEntity<ApiForecastResponse> shedResponse(Admission admission, double lat, double lon) {
+        log.warn("Shedding request for lat/lon: {}/{} with decision {}", lat, lon, admission.decision());
+        return shedResponseBuilder(admission)
+                .body(new ApiForecastResponse(Collections.emptyList(), shedMessage(admission), shedStatus(admission).value()));
+    }
+
+    public ResponseEntity<RouteForecastResponse> invalidRouteResponse(String message) {
+        log.error("Invalid route request: {}", message);
+        return ResponseEntity.badRequest().body(new RouteForecastResponse(Collections.emptyList(), message, 400));
+    }
+
+    private ResponseEntity.BodyBuilder shedResponseBuilder(Admission admission) {
+        return ResponseEntity.status(shedStatus(admission))
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()));
+    }
+
+    private HttpStatus shedStatus(Admission admission) {
+        return admission.decision() == Admission.Decision.QUOTA_EXCEEDED
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.SERVICE_UNAVAILABLE;
+    }
+
+    private String shedMessage(Admission admission) {
+        return admission.decision() == Admission.Decision.QUOTA_EXCEEDED
+                ? "Quota for uncached forecasts exceeded, retry later"
+                : "Too many uncached forecasts requested, retry later";
+    }
+
+    public ResponseEntity<ApiForecastResponse> invalidFieldsResponse(List<String> fieldNames) {
+        log.error("Requested fields {} are not all available", fieldNames);
+        return ResponseEntity.badRequest().body(new ApiForecastResponse(Collections.emptyList(), "Requested fields are not all available", 400));
+    }
+
     public ResponseEntity<ApiForecastResponse> invalidStartDateResponse() {
         log.error("Request is not within the next 7 days");
         return ResponseEntity.badRequest().body(new ApiForecastResponse(Collections.emptyList(), "Request is not within the next 7 days", 400));
@@ -104,29 +280,69 @@ public class ApiController {
         return metForecastService.getForecast(coordinates);
     }
 
-    private ApiForecastResponse createCurrentTimeResponse(MetForecastResponse metForecastResponse) {
+    private ApiForecastResponse createCurrentTimeResponse(MetForecastResponse metForecastResponse, Set<ForecastField> fields) {
         Instant now = Instant.now();
-        List<WeatherData> weatherData = metForecastResponse.weatherDataList().stream()
-                .filter(timeSeries -> timeSeries.time().isAfter(now))
-                .min((timeSeries1, timeSeries2) -> {
-                    Duration duration1 = Duration.between(now, timeSeries1.time());
-                    Duration duration2 = Duration.between(now, timeSeries2.time());
-                    return  duration1.compareTo(duration2);
-                }).stream().toList();
+        List<WeatherData> timeSeriesList = metForecastResponse.weatherDataList();
+        List<ForecastEntry> weatherData = IntStream.range(0, timeSeriesList.size())
+                .filter(index -> timeSeriesList.get(index).time().isAfter(now))
+                .boxed()
+                .min(Comparator.comparing(index -> Duration.between(now, timeSeriesList.get(index).time())))
+                .map(index -> forecastEntry(metForecastResponse, index, fields))
+                .stream().toList();
         if (weatherData.isEmpty()) {
             return new ApiForecastResponse(weatherData, "OK", 204);
         }
         return new ApiForecastResponse(weatherData, "OK", 200);
     }
 
-    private ApiForecastResponse createTimeRangeResponse(MetForecastResponse metForecastResponse, Instant startDateTime, Instant endDateTime) {
-        List<WeatherData> weatherDataBetweenEventTimes = metForecastResponse.weatherDataList()
-                .stream()
-                .filter(timeSeries -> timeSeries.time().compareTo(startDateTime) >= 0 && timeSeries.time().compareTo(endDateTime) <= 0)
+    private ApiForecastResponse createTimeRangeResponse(MetForecastResponse metForecastResponse, Instant startDateTime, Instant endDateTime, Set<ForecastField> fields) {
+        List<WeatherData> timeSeriesList = metForecastResponse.weatherDataList();
+        List<ForecastEntry> weatherDataBetweenEventTimes = IntStream.range(0, timeSeriesList.size())
+                .filter(index -> timeSeriesList.get(index).time().compareTo(startDateTime) >= 0 && timeSeriesList.get(index).time().compareTo(endDateTime) <= 0)
+                .mapToObj(index -> forecastEntry(metForecastResponse, index, fields))
                 .toList();
         return new ApiForecastResponse(weatherDataBetweenEventTimes, "OK", 200);
     }
 
+    /**
+     * The entry at the given index. Requests without fields get the cached row as it is, requests naming fields
+     * only get those fields, even when they are the default ones.
+     */
+    private ForecastEntry forecastEntry(MetForecastResponse metForecastResponse, int index, Set<ForecastField> requestedFields) {
+        if (requestedFields.isEmpty()) {
+            return metForecastResponse.weatherDataList().get(index);
+        }
+        return metForecastResponse.projectWeatherData(index, requestedFields);
+    }
+
+    /**
+     * Resolves the requested field names. Returns an empty set when the parameter is missing or blank, and empty
+     * if a name is unknown or the field is not configured.
+     */
+    private Optional<Set<ForecastField>> resolveFields(List<String> fieldNames) {
+        List<String> requestedNames = fieldNames == null ? List.of() : fieldNames.stream()
+                .map(String::trim)
+                .filter(fieldName -> !fieldName.isEmpty())
+                .toList();
+        Set<ForecastField> fields = EnumSet.noneOf(ForecastField.class);
+        if (requestedNames.isEmpty()) {
+            return Optional.of(fields);
+        }
+        Set<ForecastField> availableFields = metForecastService.availableFields();
+        for (String fieldName : requestedNames) {
+            Optional<ForecastField> field = ForecastField.fromMetName(fieldName);
+            if (field.isEmpty() || !availableFields.contains(field.get())) {
+                return Optional.empty();
+            }
+            fields.add(field.get());
+        }
+        return Optional.of(fields);
+    }
+
+
+    private boolean hasCoordinates(Waypoint waypoint) {
+        return waypoint != null && waypoint.lat() != null && waypoint.lon() != null;
+    }
 
     private boolean isWithinNextWeek(Instant startDateTime) {
         ZoneId utc = ZoneId.of("UTC");
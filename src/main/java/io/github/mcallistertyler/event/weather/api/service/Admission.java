@@ -0,0 +1,44 @@
+package io.github.mcallistertyler.event.weather.api.service;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * The outcome of asking {@link ForecastAdmissionControl} to serve a request. Admissions that hold upstream
+ * permits release them when closed, so they should be used in a try-with-resources block.
+ */
+public record Admission(Decision decision, Semaphore upstreamPermits, int permitCount, long retryAfterSeconds) implements AutoCloseable {
+
+    public enum Decision {
+        /** The forecast is cached and fresh, so no upstream call is needed. */
+        CACHED,
+        /** The request needs upstream calls. Single forecasts hold their permit, routes take one per fetch. */
+        UPSTREAM,
+        /** Too many upstream-bound requests are already in flight or waiting. */
+        OVERLOADED,
+        /** The client has used up its upstream quota. */
+        QUOTA_EXCEEDED
+    }
+
+    static Admission cached() {
+        return new Admission(Decision.CACHED, null, 0, 0);
+    }
+
+    static Admission upstream(Semaphore upstreamPermits, int permitCount) {
+        return new Admission(Decision.UPSTREAM, upstreamPermits, permitCount, 0);
+    }
+
+    static Admission rejected(Decision decision, long retryAfterSeconds) {
+        return new Admission(decision, null, 0, retryAfterSeconds);
+    }
+
+    public boolean isAdmitted() {
+        return decision == Decision.CACHED || decision == Decision.UPSTREAM;
+    }
+
+    @Override
+    public void close() {
+        if (upstreamPermits != null && permitCount > 0) {
+            upstreamPermits.release(permitCount);
+        }
+    }
+}
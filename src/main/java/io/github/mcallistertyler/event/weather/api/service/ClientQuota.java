@@ -0,0 +1,39 @@
+package io.github.mcallistertyler.event.weather.api.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upstream quota for a single client, kept as the time its quota is next fully replenished. Up to a second's worth
+ * of requests may be spent at once, and a client that is not in debt may always make a request, even one larger
+ * than a second's worth, which it then pays for before its next request is allowed. Requests that are refused are
+ * not charged, and the caller is told how long to wait instead.
+ */
+class ClientQuota {
+
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long nanosPerRequest;
+    private long replenishedAt;
+
+    ClientQuota(double requestsPerSecond) {
+        this.nanosPerRequest = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.replenishedAt = System.nanoTime();
+    }
+
+    /**
+     * Charges the quota for the given number of requests if they are allowed now.
+     *
+     * @return 0 if the requests were charged, otherwise the nanoseconds until they would be allowed
+     */
+    synchronized long tryAcquire(int requests) {
+        long now = System.nanoTime();
+        long debtFreeAt = Math.max(replenishedAt, now);
+        long chargedUntil = debtFreeAt + requests * nanosPerRequest;
+        long allowedAt = Math.min(chargedUntil - BURST_NANOS, debtFreeAt);
+        if (allowedAt - now > 0) {
+            return allowedAt - now;
+        }
+        replenishedAt = chargedUntil;
+        return 0;
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.mcallistertyler.event.weather.api.service;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Decides whether a forecast request may be served. Requests that can be answered from the cache are
+ * always admitted. Requests that need a MET call share a fixed number of upstream permits, a bounded
+ * number of them may wait briefly for a permit and the rest are shed straight away. Upstream-bound
+ * requests are also limited per client. Configured API keys each get their own quota, and every other caller
+ * is limited by remote address, so leaving out the key or making one up doesn't buy a fresh quota.
+ */
+@Service
+public class ForecastAdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(ForecastAdmissionControl.class);
+
+    private final int MAX_TRACKED_CLIENTS = 10_000;
+    private final Duration CLIENT_QUOTA_EXPIRATION = Duration.ofMinutes(10);
+
+    private final MetForecastService metForecastService;
+    private final Semaphore upstreamPermits;
+    private final AtomicInteger waitingForUpstream = new AtomicInteger();
+    private final int maxQueuedUpstreamRequests;
+    private final long maxQueueWaitMillis;
+    private final long retryAfterSeconds;
+    private final LoadingCache<String, ClientQuota> clientQuotas;
+
+    @Value("${api.admission.client-keys:}")
+    private Set<String> clientKeys = Set.of();
+
+    public ForecastAdmissionControl(MetForecastService metForecastService,
+                                    @Value("${api.admission.max-concurrent-upstream-requests}") int maxConcurrentUpstreamRequests,
+                                    @Value("${api.admission.max-queued-upstream-requests}") int maxQueuedUpstreamRequests,
+                                    @Value("${api.admission.max-queue-wait-millis}") long maxQueueWaitMillis,
+                                    @Value("${api.admission.client-upstream-requests-per-second}") double clientUpstreamRequestsPerSecond,
+                                    @Value("${api.admission.retry-after-seconds}") long retryAfterSeconds) {
+        this.metForecastService = metForecastService;
+        this.upstreamPermits = new Semaphore(maxConcurrentUpstreamRequests);
+        this.maxQueuedUpstreamRequests = maxQueuedUpstreamRequests;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.clientQuotas = CacheBuilder.newBuilder()
+                .maximumSize(MAX_TRACKED_CLIENTS)
+                .expireAfterAccess(CLIENT_QUOTA_EXPIRATION)
+                .build(CacheLoader.from(clientKey -> new ClientQuota(clientUpstreamRequestsPerSecond)));
+    }
+
+    public Admission admit(String apiKey, String remoteAddress, Coordinates coordinates) {
+        if (metForecastService.isCachedAndFresh(coordinates)) {
+            return Admission.cached();
+        }
+
+        Admission admission = acquireUpstreamPermit(coordinates);
+        if (!admission.isAdmitted()) {
+            return admission;
+        }
+
+        // Quota is only spent once a permit is held, so requests shed for server load don't count against the client
+        Optional<Admission> quotaRejection = chargeQuota(apiKey, remoteAddress, 1, List.of(coordinates));
+        if (quotaRejection.isPresent()) {
+            admission.close();
+            return quotaRejection.get();
+        }
+        return admission;
+    }
+
+    /**
+     * Admits a route. It spends one quota token for each location that is not cached and fresh, so a fan-out is
+     * held to the same client budget as single requests, but holds no upstream permits itself. Each fetch takes
+     * its own permit through {@link #acquireFetchPermit} instead, so a route longer than the number of permits is
+     * fetched in waves rather than shed.
+     */
+    public Admission admitRoute(String apiKey, String remoteAddress, Collection<Coordinates> coordinates) {
+        int uncachedLocations = (int) coordinates.stream()
+                .filter(location -> !metForecastService.isCachedAndFresh(location))
+                .count();
+        if (uncachedLocations == 0) {
+            return Admission.cached();
+        }
+
+        Optional<Admission> quotaRejection = chargeQuota(apiKey, remoteAddress, uncachedLocations, coordinates);
+        if (quotaRejection.isPresent()) {
+            return quotaRejection.get();
+        }
+        return Admission.upstream(upstreamPermits, 0);
+    }
+
+    /**
+     * Waits up to the given timeout for a single upstream permit, for a fetch that has already been admitted as part
+     * of a route. The permit is released when the returned admission is closed.
+     */
+    public Admission acquireFetchPermit(long timeout, TimeUnit unit) {
+        try {
+            if (upstreamPermits.tryAcquire(timeout, unit)) {
+                return Admission.upstream(upstreamPermits, 1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Admission.rejected(Admission.Decision.OVERLOADED, retryAfterSeconds);
+    }
+
+    /**
+     * Charges the client's quota for the given number of upstream calls. Returns the rejection to send if the
+     * quota is used up, or empty if the calls were charged.
+     */
+    private Optional<Admission> chargeQuota(String apiKey, String remoteAddress, int upstreamCalls, Collection<Coordinates> coordinates) {
+        String clientKey = clientKey(apiKey, remoteAddress);
+        long quotaWaitNanos = clientQuotas.getUnchecked(clientKey).tryAcquire(upstreamCalls);
+        if (quotaWaitNanos > 0) {
+            log.warn("Client {} has exceeded its upstream quota. Shedding request for {}", clientKey, coordinates);
+            return Optional.of(Admission.rejected(Admission.Decision.QUOTA_EXCEEDED, Math.max(1, ceilSeconds(quotaWaitNanos))));
+        }
+        return Optional.empty();
+    }
+
+    private String clientKey(String apiKey, String remoteAddress) {
+        if (apiKey != null && clientKeys.contains(apiKey)) {
+            return "key:" + apiKey;
+        }
+        return "address:" + remoteAddress;
+    }
+
+    private static long ceilSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private Admission acquireUpstreamPermit(Coordinates coordinates) {
+        if (upstreamPermits.tryAcquire()) {
+            return Admission.upstream(upstreamPermits, 1);
+        }
+
+        try {
+            if (waitingForUpstream.incrementAndGet() > maxQueuedUpstreamRequests) {
+                log.warn("Upstream queue is full. Shedding request for {}", coordinates);
+                return Admission.rejected(Admission.Decision.OVERLOADED, retryAfterSeconds);
+            }
+            if (upstreamPermits.tryAcquire(maxQueueWaitMillis, TimeUnit.MILLISECONDS)) {
+                return Admission.upstream(upstreamPermits, 1);
+            }
+            log.warn("Timed out waiting for an upstream permit. Shedding request for {}", coordinates);
+            return Admission.rejected(Admission.Decision.OVERLOADED, retryAfterSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Admission.rejected(Admission.Decision.OVERLOADED, retryAfterSeconds);
+        } finally {
+            waitingForUpstream.decrementAndGet();
+        }
+    }
+}
@@ -5,12 +5,27 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
 import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastField;
 import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.jfr.CacheOutcome;
+import io.github.mcallistertyler.event.weather.api.jfr.ForecastCacheStatisticsEvent;
+import io.github.mcallistertyler.event.weather.api.jfr.ForecastLookupEvent;
+import io.github.mcallistertyler.event.weather.api.jfr.MetFetchEvent;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.FlightRecorder;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -33,23 +48,51 @@ public class MetForecastService {
     @Value("${api.metno.user-agent}")
     private String userAgent;
 
+    @Value("${api.forecast.fields:}")
+    private List<String> forecastFields = List.of();
+
     private final OkHttpClient httpClient;
 
+    private final OffHeapForecastStore offHeapForecastStore;
+
     private final ObjectMapper objectMapper = new ObjectMapper()
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
     private final int MAX_CACHE_SIZE = 1000;
     private final Duration CACHE_EXPIRATION = Duration.ofHours(2);
 
+    private enum LoadSource { OFF_HEAP, MET }
+
+    // Set by the cache loader so a miss can tell whether it loaded the forecast itself, and from where,
+    // or reused another thread's in-flight load.
+    private final ThreadLocal<LoadSource> loadedOnCurrentThread = new ThreadLocal<>();
+
+    // Keys the cache loader is currently loading. A miss only counts as coalesced if its key was still loading
+    // when it looked, since otherwise the forecast was already cached and the lookup didn't wait on anything.
+    private final Set<Coordinates> loadsInFlight = ConcurrentHashMap.newKeySet();
+
+    private final Runnable cacheStatisticsHook = this::emitCacheStatistics;
+
+    // Forecasts evicted for size drop to the off-heap store and are promoted back by the loader on their next
+    // lookup, so promotion is coalesced per key like any other load and never races a MET fetch for the same key
     private final LoadingCache<Coordinates, MetForecastResponse> forecastCache = CacheBuilder.newBuilder()
             .maximumSize(MAX_CACHE_SIZE)
+            .<Coordinates, MetForecastResponse>removalListener(this::demoteToOffHeap)
             .recordStats()
             .expireAfterWrite(CACHE_EXPIRATION)
             .build(new CacheLoader<>() {
                 @NotNull
                 @Override
                 public MetForecastResponse load(@NotNull Coordinates coordinates) throws IOException {
+                    loadsInFlight.add(coordinates);
                     try {
+                        Optional<MetForecastResponse> offHeapForecast = offHeapForecastStore.remove(coordinates);
+                        if (offHeapForecast.isPresent()) {
+                            log.info("Promoting forecast for {} from the off-heap store", coordinates);
+                            loadedOnCurrentThread.set(LoadSource.OFF_HEAP);
+                            return offHeapForecast.get();
+                        }
+                        loadedOnCurrentThread.set(LoadSource.MET);
                         Optional<MetForecastResponse> forecastResponse = fetchMetForecastFromApi(coordinates, null);
                         if (forecastResponse.isPresent()) {
                             return forecastResponse.get();
@@ -59,40 +102,140 @@ public class MetForecastService {
                     } catch (IOException e) {
                         log.error("Exception occurred when trying to get forecast response for coordinates: {}", coordinates, e);
                         throw new IOException("Failed to retrieve forecast response from coordinates", e);
+                    } finally {
+                        loadsInFlight.remove(coordinates);
                     }
                 }
             });
 
-    public MetForecastService(OkHttpClient httpClient) {
+    public MetForecastService(OkHttpClient httpClient, OffHeapForecastStore offHeapForecastStore) {
         this.httpClient = httpClient;
+        this.offHeapForecastStore = offHeapForecastStore;
+    }
+
+    @PostConstruct
+    public void registerCacheStatistics() {
+        FlightRecorder.addPeriodicEvent(ForecastCacheStatisticsEvent.class, cacheStatisticsHook);
+    }
+
+    @PostConstruct
+    public void validateForecastFields() {
+        forecastFields.stream()
+                .filter(fieldName -> ForecastField.fromMetName(fieldName.trim()).isEmpty())
+                .forEach(fieldName -> log.warn("Unknown forecast field {} configured. It will be ignored", fieldName));
+    }
+
+    @PreDestroy
+    public void unregisterCacheStatistics() {
+        FlightRecorder.removePeriodicEvent(cacheStatisticsHook);
+    }
+
+    /**
+     * The fields kept when parsing forecasts: wind speed and air temperature plus any configured extended fields.
+     */
+    public Set<ForecastField> availableFields() {
+        Set<ForecastField> fields = EnumSet.copyOf(MetForecastResponse.DEFAULT_FIELDS);
+        forecastFields.forEach(fieldName -> ForecastField.fromMetName(fieldName.trim()).ifPresent(fields::add));
+        return fields;
+    }
+
+    /**
+     * Checks whether a forecast can be served without calling the MET api. Does not count towards cache stats.
+     */
+    public boolean isCachedAndFresh(Coordinates coordinates) {
+        MetForecastResponse cachedForecast = forecastCache.asMap().get(coordinates);
+        if (cachedForecast != null) {
+            return cachedForecast.isDataFresh();
+        }
+        return offHeapForecastStore.isFresh(coordinates);
     }
 
     public Optional<MetForecastResponse> getForecast(Coordinates coordinates) {
+        ForecastLookupEvent lookupEvent = new ForecastLookupEvent();
+        lookupEvent.begin();
+        Optional<MetForecastResponse> forecast = lookupForecast(coordinates, lookupEvent);
+        lookupEvent.end();
+        if (lookupEvent.shouldCommit()) {
+            lookupEvent.latitude = coordinates.getLat();
+            lookupEvent.longitude = coordinates.getLon();
+            lookupEvent.forecastReturned = forecast.isPresent();
+            lookupEvent.commit();
+        }
+        return forecast;
+    }
+
+    private Optional<MetForecastResponse> lookupForecast(Coordinates coordinates, ForecastLookupEvent lookupEvent) {
+        boolean recording = lookupEvent.isEnabled();
         try {
+            long lookupStart = recording ? System.nanoTime() : 0L;
             MetForecastResponse cachedForecast = forecastCache.getIfPresent(coordinates);
-            if (cachedForecast != null) {
-               if (cachedForecast.isDataFresh()) {
-                   log.info("Returning cached response since it has not yet expired.");
-                   return Optional.of(cachedForecast);
-               }
-
-               log.info("Forecast has expired. New forecast will be fetched");
-
-               String lastModified = cachedForecast.lastModifiedHeader() != null ? cachedForecast.lastModifiedHeader() : null;
-               Optional<MetForecastResponse> refreshedForecastResponse = fetchMetForecastFromApi(coordinates, lastModified);
-               if (refreshedForecastResponse.isEmpty()) {
-                   return Optional.of(cachedForecast);
-               }
-               forecastCache.put(coordinates, refreshedForecastResponse.get());
-               return refreshedForecastResponse;
+            boolean coalesced = false;
+            if (cachedForecast == null) {
+                boolean loadInFlight = loadsInFlight.contains(coordinates);
+                loadedOnCurrentThread.remove();
+                cachedForecast = forecastCache.get(coordinates);
+                LoadSource loadSource = loadedOnCurrentThread.get();
+                if (loadSource == LoadSource.MET) {
+                    lookupEvent.cacheOutcome = CacheOutcome.MISS.name();
+                    return Optional.of(cachedForecast);
+                }
+                lookupEvent.promotedFromOffHeap = loadSource == LoadSource.OFF_HEAP;
+                coalesced = loadSource == null && loadInFlight;
+            }
+            if (recording) {
+                lookupEvent.cacheLookupDuration = System.nanoTime() - lookupStart;
+            }
+
+            long freshnessStart = recording ? System.nanoTime() : 0L;
+            boolean dataFresh = cachedForecast.isDataFresh();
+            if (recording) {
+                lookupEvent.freshnessCheckDuration = System.nanoTime() - freshnessStart;
+            }
+            if (dataFresh) {
+                lookupEvent.cacheOutcome = coalesced ? CacheOutcome.COALESCED.name() : CacheOutcome.HIT.name();
+                log.info("Returning cached response since it has not yet expired.");
+                return Optional.of(cachedForecast);
+            }
+
+            lookupEvent.cacheOutcome = CacheOutcome.STALE.name();
+            log.info("Forecast has expired. New forecast will be fetched");
+
+            String lastModified = cachedForecast.lastModifiedHeader() != null ? cachedForecast.lastModifiedHeader() : null;
+            Optional<MetForecastResponse> refreshedForecastResponse = fetchMetForecastFromApi(coordinates, lastModified);
+            if (refreshedForecastResponse.isEmpty()) {
+                return Optional.of(cachedForecast);
             }
-            return Optional.of(forecastCache.get(coordinates));
+            forecastCache.put(coordinates, refreshedForecastResponse.get());
+            return refreshedForecastResponse;
         } catch (Exception e) {
+            lookupEvent.cacheOutcome = CacheOutcome.ERROR.name();
             log.error("Failed to retrieve forecast. Returning possible cached value", e);
             return Optional.ofNullable(forecastCache.getIfPresent(coordinates));
+        } finally {
+            loadedOnCurrentThread.remove();
         }
     }
 
+    private void demoteToOffHeap(RemovalNotification<Coordinates, MetForecastResponse> notification) {
+        if (notification.getCause() == RemovalCause.SIZE && notification.getKey() != null && notification.getValue() != null) {
+            offHeapForecastStore.put(notification.getKey(), notification.getValue());
+        }
+    }
+
+    private void emitCacheStatistics() {
+        CacheStats onHeapStats = forecastCache.stats();
+        OffHeapForecastStore.Stats offHeapStats = offHeapForecastStore.stats();
+        ForecastCacheStatisticsEvent statisticsEvent = new ForecastCacheStatisticsEvent();
+        statisticsEvent.onHeapEntries = forecastCache.size();
+        statisticsEvent.onHeapHitRate = onHeapStats.hitRate();
+        statisticsEvent.onHeapEvictions = onHeapStats.evictionCount();
+        statisticsEvent.offHeapEntries = offHeapStats.entries();
+        statisticsEvent.offHeapAllocated = offHeapStats.allocatedBytes();
+        statisticsEvent.offHeapHitRate = offHeapStats.hitRate();
+        statisticsEvent.offHeapEvictions = offHeapStats.evictions();
+        statisticsEvent.offHeapRejected = offHeapStats.rejected();
+        statisticsEvent.commit();
+    }
 
     public Optional<MetForecastResponse> fetchMetForecastFromApi(Coordinates coordinates, String ifModifiedHeader) throws IOException {
         HttpUrl httpUrl = new HttpUrl.Builder()
@@ -111,7 +254,11 @@ public class MetForecastService {
         if (ifModifiedHeader != null) {
             request.addHeader("If-Modified-Since", ifModifiedHeader);
         }
+
+        MetFetchEvent fetchEvent = new MetFetchEvent();
+        fetchEvent.begin();
         try (Response response = httpClient.newCall(request.build()).execute()) {
+            fetchEvent.statusCode = response.code();
             switch (response.code()) {
                 case 304:
                     log.info("304 received for forecast. Re-use previous forecast");
@@ -126,9 +273,19 @@ public class MetForecastService {
                     String lastModifiedHeader = response.header("Last-Modified", null);
                     String expiresHeader = response.header("Expires", null);
                     if (body != null) {
-                        String json = body.string();
+                        byte[] json = body.bytes();
+                        fetchEvent.responseBytes = json.length;
+                        boolean recording = fetchEvent.isEnabled();
+                        long readTreeStart = recording ? System.nanoTime() : 0L;
                         JsonNode jsonNode = objectMapper.readTree(json);
-                        return MetForecastResponse.parseMetResponse(jsonNode, lastModifiedHeader, expiresHeader);
+                        long parseStart = recording ? System.nanoTime() : 0L;
+                        Optional<MetForecastResponse> metForecastResponse = MetForecastResponse.parseMetResponse(jsonNode, lastModifiedHeader, expiresHeader, availableFields());
+                        if (recording) {
+                            fetchEvent.readTreeDuration = parseStart - readTreeStart;
+                            fetchEvent.parseDuration = System.nanoTime() - parseStart;
+                        }
+                        fetchEvent.parsed = metForecastResponse.isPresent();
+                        return metForecastResponse;
                     }
                     break;
                 default:
@@ -138,6 +295,14 @@ public class MetForecastService {
         } catch (IOException e) {
             log.error("Error when calling met weather API", e);
             throw new IOException("Error when calling met weather API", e);
+        } finally {
+            fetchEvent.end();
+            if (fetchEvent.shouldCommit()) {
+                fetchEvent.latitude = coordinates.getLat();
+                fetchEvent.longitude = coordinates.getLon();
+                fetchEvent.conditional = ifModifiedHeader != null;
+                fetchEvent.commit();
+            }
         }
     }
 
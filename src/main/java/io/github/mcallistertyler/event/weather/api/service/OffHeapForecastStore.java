@@ -0,0 +1,643 @@
+package io.github.mcallistertyler.event.weather.api.service;
+
+import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastField;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastFieldValues;
+import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Second cache tier that keeps forecasts evicted from the on-heap cache as compactly encoded bytes in direct
+ * {@link ByteBuffer} slabs, so many more locations can be held without adding to GC work.
+ * <p>
+ * Each entry is stored column by column. Forecast times are written as a base time plus whole-hour offsets, and
+ * numeric columns as tenths in a {@code short}, which is exact for MET values. Columns that don't fit either
+ * encoding fall back to full precision, so a decoded forecast is always equal to the one stored. Text columns
+ * such as {@code symbol_code} hold each distinct value once followed by a small index per row.
+ * <p>
+ * Slabs are written in turn like a ring. When the memory limit is reached the oldest slab is reused and every
+ * entry still in it is evicted. Removed or overwritten entries leave their bytes behind until their slab is reused.
+ * Each entry starts with its packed coordinates, so the only heap state per entry is two slots in a primitive index.
+ */
+@Component
+public class OffHeapForecastStore {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapForecastStore.class);
+
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int EXACT_TIME_BYTES = Long.BYTES + Integer.BYTES;
+    private static final short NULL_STRING = -1;
+
+    private static final byte HOURLY_TIMES = 0;
+    private static final byte EXACT_TIMES = 1;
+    private static final byte SCALED_NUMBERS = 0;
+    private static final byte EXACT_NUMBERS = 1;
+    private static final double NUMBER_SCALE = 10.0;
+    private static final short SCALED_NAN = Short.MIN_VALUE;
+
+    private static final int MAX_BYTE_CODES = 255;
+
+    public record Stats(long entries, long allocatedBytes, long hits, long misses, long evictions, long rejected) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+    }
+
+    private final int slabSizeBytes;
+    private final ByteBuffer[] slabs;
+    private final int[] slabEnds;
+    private final LocationIndex index = new LocationIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int currentSlab = 0;
+    private int writeOffset = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public OffHeapForecastStore(@Value("${api.forecast.cache.off-heap.max-bytes}") long maxBytes,
+                                @Value("${api.forecast.cache.off-heap.slab-size-bytes}") int slabSizeBytes) {
+        this.slabSizeBytes = slabSizeBytes;
+        int slabCount = (int) Math.max(1, maxBytes / slabSizeBytes);
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabEnds = new int[slabCount];
+    }
+
+    public void put(Coordinates coordinates, MetForecastResponse forecast) {
+        byte[] lastModified = stringBytes(forecast.lastModifiedHeader());
+        byte[] expires = stringBytes(forecast.expiresHeader());
+        List<WeatherData> weatherDataList = forecast.weatherDataList();
+        int rowCount = weatherDataList.size();
+        Instant[] times = new Instant[rowCount];
+        double[] windSpeeds = new double[rowCount];
+        double[] airTemperatures = new double[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            WeatherData weatherData = weatherDataList.get(row);
+            times[row] = weatherData.time();
+            windSpeeds[row] = weatherData.windSpeed() == null ? Double.NaN : weatherData.windSpeed();
+            airTemperatures[row] = weatherData.airTemperature() == null ? Double.NaN : weatherData.airTemperature();
+        }
+        boolean hourlyTimes = hasHourlyOffsets(times);
+
+        int entryBytes = HEADER_BYTES
+                + Short.BYTES + (lastModified == null ? 0 : lastModified.length)
+                + Short.BYTES + (expires == null ? 0 : expires.length)
+                + Short.BYTES
+                + timeColumnBytes(rowCount, hourlyTimes)
+                + numberColumnBytes(windSpeeds)
+                + numberColumnBytes(airTemperatures);
+
+        ForecastFieldValues fieldValues = forecast.fieldValues();
+        Map<ForecastField, TextColumn> textColumns = new EnumMap<>(ForecastField.class);
+        entryBytes += Byte.BYTES;
+        for (ForecastField field : fieldValues.fields()) {
+            entryBytes += Byte.BYTES;
+            if (field.getType() == ForecastField.Type.NUMBER) {
+                entryBytes += numberColumnBytes((double[]) fieldValues.column(field));
+            } else {
+                TextColumn textColumn = TextColumn.of((String[]) fieldValues.column(field));
+                entryBytes += textColumn.encodedBytes();
+                textColumns.put(field, textColumn);
+            }
+        }
+
+        if (rowCount > Short.MAX_VALUE || entryBytes > slabSizeBytes) {
+            rejected.incrementAndGet();
+            log.warn("Forecast for {} is {} bytes which does not fit in a slab. Not storing it off-heap", coordinates, entryBytes);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (writeOffset + entryBytes > slabSizeBytes) {
+                advanceSlab();
+            }
+            ByteBuffer slab = slab(currentSlab);
+            int offset = writeOffset;
+            int position = offset;
+            slab.putInt(position, entryBytes);
+            position += Integer.BYTES;
+            slab.putLong(position, packKey(coordinates));
+            position += Long.BYTES;
+            slab.putLong(position, forecast.updatedAt().getEpochSecond());
+            position += Long.BYTES;
+            slab.putInt(position, forecast.updatedAt().getNano());
+            position += Integer.BYTES;
+            position = putString(slab, position, lastModified);
+            position = putString(slab, position, expires);
+            slab.putShort(position, (short) rowCount);
+            position += Short.BYTES;
+            position = putTimeColumn(slab, position, times, hourlyTimes);
+            position = putNumberColumn(slab, position, windSpeeds);
+            position = putNumberColumn(slab, position, airTemperatures);
+            slab.put(position, (byte) fieldValues.fields().size());
+            position += Byte.BYTES;
+            for (ForecastField field : fieldValues.fields()) {
+                slab.put(position, (byte) field.ordinal());
+                position += Byte.BYTES;
+                if (field.getType() == ForecastField.Type.NUMBER) {
+                    position = putNumberColumn(slab, position, (double[]) fieldValues.column(field));
+                } else {
+                    position = putTextColumn(slab, position, textColumns.get(field));
+                }
+            }
+
+            writeOffset = position;
+            index.put(packKey(coordinates), location(currentSlab, offset));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the forecast for the coordinates so it can be promoted back to the on-heap cache.
+     */
+    public Optional<MetForecastResponse> remove(Coordinates coordinates) {
+        long key = packKey(coordinates);
+        // Most lookups miss, so check under the read lock before taking the write lock
+        lock.readLock().lock();
+        try {
+            if (index.get(key) == LocationIndex.ABSENT) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            long location = index.remove(key);
+            if (location == LocationIndex.ABSENT) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+            return Optional.of(decode(location, true));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a fresh forecast is stored for the coordinates. Only the headers are decoded and the
+     * hit and miss counts are not affected.
+     */
+    public boolean isFresh(Coordinates coordinates) {
+        lock.readLock().lock();
+        try {
+            long location = index.get(packKey(coordinates));
+            return location != LocationIndex.ABSENT && decode(location, false).isDataFresh();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            long allocatedSlabs = 0;
+            for (ByteBuffer slab : slabs) {
+                if (slab != null) {
+                    allocatedSlabs++;
+                }
+            }
+            return new Stats(index.size(),
+                    allocatedSlabs * slabSizeBytes,
+                    hits.get(),
+                    misses.get(),
+                    evictions.get(),
+                    rejected.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void advanceSlab() {
+        slabEnds[currentSlab] = writeOffset;
+        currentSlab = (currentSlab + 1) % slabs.length;
+        writeOffset = 0;
+        ByteBuffer evictedSlab = slabs[currentSlab];
+        if (evictedSlab == null) {
+            return;
+        }
+        // Walk the entries being overwritten and drop those the index still points at
+        for (int offset = 0; offset < slabEnds[currentSlab]; offset += evictedSlab.getInt(offset)) {
+            long key = evictedSlab.getLong(offset + Integer.BYTES);
+            if (index.get(key) == location(currentSlab, offset)) {
+                index.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        slabEnds[currentSlab] = 0;
+    }
+
+    private ByteBuffer slab(int slabIndex) {
+        if (slabs[slabIndex] == null) {
+            slabs[slabIndex] = ByteBuffer.allocateDirect(slabSizeBytes);
+        }
+        return slabs[slabIndex];
+    }
+
+    private MetForecastResponse decode(long location, boolean includeWeatherData) {
+        ByteBuffer slab = slabs[slabIndex(location)];
+        int position = offset(location) + Integer.BYTES + Long.BYTES;
+        Instant updatedAt = Instant.ofEpochSecond(slab.getLong(position), slab.getInt(position + Long.BYTES));
+        position += Long.BYTES + Integer.BYTES;
+        String lastModified = getString(slab, position);
+        position += Short.BYTES + Math.max(0, slab.getShort(position));
+        String expires = getString(slab, position);
+        position += Short.BYTES + Math.max(0, slab.getShort(position));
+        if (!includeWeatherData) {
+            return new MetForecastResponse(updatedAt, lastModified, expires, Collections.emptyList());
+        }
+
+        int rowCount = slab.getShort(position);
+        position += Short.BYTES;
+        Instant[] times = new Instant[rowCount];
+        position = getTimeColumn(slab, position, times);
+        double[] windSpeeds = new double[rowCount];
+        position = getNumberColumn(slab, position, windSpeeds);
+        double[] airTemperatures = new double[rowCount];
+        position = getNumberColumn(slab, position, airTemperatures);
+        List<WeatherData> weatherDataList = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            weatherDataList.add(new WeatherData(times[row],
+                    Double.isNaN(windSpeeds[row]) ? null : windSpeeds[row],
+                    Double.isNaN(airTemperatures[row]) ? null : airTemperatures[row]));
+        }
+
+        int fieldCount = slab.get(position);
+        position += Byte.BYTES;
+        Map<ForecastField, Object> columns = new EnumMap<>(ForecastField.class);
+        for (int i = 0; i < fieldCount; i++) {
+            ForecastField field = ForecastField.values()[slab.get(position)];
+            position += Byte.BYTES;
+            if (field.getType() == ForecastField.Type.NUMBER) {
+                double[] numbers = new double[rowCount];
+                position = getNumberColumn(slab, position, numbers);
+                columns.put(field, numbers);
+            } else {
+                String[] texts = new String[rowCount];
+                position = getTextColumn(slab, position, texts);
+                columns.put(field, texts);
+            }
+        }
+        return new MetForecastResponse(updatedAt, lastModified, expires, weatherDataList, ForecastFieldValues.ofColumns(columns));
+    }
+
+    /**
+     * Whether every time is a whole number of hours after the first, which holds for MET forecasts and lets the
+     * times be stored as short hour offsets.
+     */
+    private static boolean hasHourlyOffsets(Instant[] times) {
+        if (times.length == 0) {
+            return true;
+        }
+        Instant base = times[0];
+        for (Instant time : times) {
+            long seconds = time.getEpochSecond() - base.getEpochSecond();
+            if (time.getNano() != base.getNano() || seconds % 3600 != 0 || seconds / 3600 != (short) (seconds / 3600)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int timeColumnBytes(int rowCount, boolean hourlyTimes) {
+        return Byte.BYTES + (hourlyTimes ? EXACT_TIME_BYTES + rowCount * Short.BYTES : rowCount * EXACT_TIME_BYTES);
+    }
+
+    private static int putTimeColumn(ByteBuffer slab, int position, Instant[] times, boolean hourlyTimes) {
+        slab.put(position, hourlyTimes ? HOURLY_TIMES : EXACT_TIMES);
+        position += Byte.BYTES;
+        if (hourlyTimes) {
+            Instant base = times.length == 0 ? Instant.EPOCH : times[0];
+            slab.putLong(position, base.getEpochSecond());
+            slab.putInt(position + Long.BYTES, base.getNano());
+            position += EXACT_TIME_BYTES;
+            for (Instant time : times) {
+                slab.putShort(position, (short) ((time.getEpochSecond() - base.getEpochSecond()) / 3600));
+                position += Short.BYTES;
+            }
+        } else {
+            for (Instant time : times) {
+                slab.putLong(position, time.getEpochSecond());
+                slab.putInt(position + Long.BYTES, time.getNano());
+                position += EXACT_TIME_BYTES;
+            }
+        }
+        return position;
+    }
+
+    private static int getTimeColumn(ByteBuffer slab, int position, Instant[] times) {
+        byte encoding = slab.get(position);
+        position += Byte.BYTES;
+        if (encoding == HOURLY_TIMES) {
+            long baseSeconds = slab.getLong(position);
+            int baseNanos = slab.getInt(position + Long.BYTES);
+            position += EXACT_TIME_BYTES;
+            for (int row = 0; row < times.length; row++) {
+                times[row] = Instant.ofEpochSecond(baseSeconds + slab.getShort(position) * 3600L, baseNanos);
+                position += Short.BYTES;
+            }
+        } else {
+            for (int row = 0; row < times.length; row++) {
+                times[row] = Instant.ofEpochSecond(slab.getLong(position), slab.getInt(position + Long.BYTES));
+                position += EXACT_TIME_BYTES;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Whether every value is missing or a whole number of tenths that fits in a short and comes back unchanged.
+     */
+    private static boolean isScalable(double[] values) {
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            double scaled = Math.rint(value * NUMBER_SCALE);
+            if (scaled <= SCALED_NAN || scaled > Short.MAX_VALUE || scaled / NUMBER_SCALE != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int numberColumnBytes(double[] values) {
+        return Byte.BYTES + values.length * (isScalable(values) ? Short.BYTES : Double.BYTES);
+    }
+
+    private static int putNumberColumn(ByteBuffer slab, int position, double[] values) {
+        boolean scaled = isScalable(values);
+        slab.put(position, scaled ? SCALED_NUMBERS : EXACT_NUMBERS);
+        position += Byte.BYTES;
+        for (double value : values) {
+            if (scaled) {
+                slab.putShort(position, Double.isNaN(value) ? SCALED_NAN : (short) Math.rint(value * NUMBER_SCALE));
+                position += Short.BYTES;
+            } else {
+                slab.putDouble(position, value);
+                position += Double.BYTES;
+            }
+        }
+        return position;
+    }
+
+    private static int getNumberColumn(ByteBuffer slab, int position, double[] values) {
+        boolean scaled = slab.get(position) == SCALED_NUMBERS;
+        position += Byte.BYTES;
+        for (int row = 0; row < values.length; row++) {
+            if (scaled) {
+                short value = slab.getShort(position);
+                values[row] = value == SCALED_NAN ? Double.NaN : value / NUMBER_SCALE;
+                position += Short.BYTES;
+            } else {
+                values[row] = slab.getDouble(position);
+                position += Double.BYTES;
+            }
+        }
+        return position;
+    }
+
+    private static int putTextColumn(ByteBuffer slab, int position, TextColumn textColumn) {
+        List<byte[]> dictionary = textColumn.dictionary();
+        slab.putShort(position, (short) dictionary.size());
+        position += Short.BYTES;
+        for (byte[] textBytes : dictionary) {
+            position = putString(slab, position, textBytes);
+        }
+        boolean byteCodes = dictionary.size() <= MAX_BYTE_CODES;
+        for (int code : textColumn.codes()) {
+            if (byteCodes) {
+                slab.put(position, (byte) code);
+                position += Byte.BYTES;
+            } else {
+                slab.putShort(position, (short) code);
+                position += Short.BYTES;
+            }
+        }
+        return position;
+    }
+
+    private static int getTextColumn(ByteBuffer slab, int position, String[] texts) {
+        String[] dictionary = new String[slab.getShort(position)];
+        position += Short.BYTES;
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = getString(slab, position).intern();
+            position += Short.BYTES + slab.getShort(position);
+        }
+        boolean byteCodes = dictionary.length <= MAX_BYTE_CODES;
+        for (int row = 0; row < texts.length; row++) {
+            int code;
+            if (byteCodes) {
+                code = Byte.toUnsignedInt(slab.get(position));
+                position += Byte.BYTES;
+            } else {
+                code = slab.getShort(position);
+                position += Short.BYTES;
+            }
+            texts[row] = code == 0 ? null : dictionary[code - 1];
+        }
+        return position;
+    }
+
+    /**
+     * A text column as its distinct values in order of first use and, for each row, the 1-based index of its
+     * value or 0 when it has none.
+     */
+    private record TextColumn(List<byte[]> dictionary, int[] codes) {
+
+        static TextColumn of(String[] texts) {
+            Map<String, Integer> codesByText = new HashMap<>();
+            List<byte[]> dictionary = new ArrayList<>();
+            int[] codes = new int[texts.length];
+            for (int row = 0; row < texts.length; row++) {
+                byte[] textBytes = stringBytes(texts[row]);
+                if (textBytes != null) {
+                    codes[row] = codesByText.computeIfAbsent(texts[row], text -> {
+                        dictionary.add(textBytes);
+                        return dictionary.size();
+                    });
+                }
+            }
+            return new TextColumn(dictionary, codes);
+        }
+
+        int encodedBytes() {
+            int bytes = Short.BYTES;
+            for (byte[] textBytes : dictionary) {
+                bytes += Short.BYTES + textBytes.length;
+            }
+            return bytes + codes.length * (dictionary.size() <= MAX_BYTE_CODES ? Byte.BYTES : Short.BYTES);
+        }
+    }
+
+    private static byte[] stringBytes(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Headers are short, anything that isn't is dropped rather than making the entry unreadable
+        return bytes.length > Short.MAX_VALUE ? null : bytes;
+    }
+
+    private static int putString(ByteBuffer slab, int position, byte[] bytes) {
+        if (bytes == null) {
+            slab.putShort(position, NULL_STRING);
+            return position + Short.BYTES;
+        }
+        slab.putShort(position, (short) bytes.length);
+        slab.put(position + Short.BYTES, bytes);
+        return position + Short.BYTES + bytes.length;
+    }
+
+    private static String getString(ByteBuffer slab, int position) {
+        short length = slab.getShort(position);
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        slab.get(position + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Packs coordinates, which are already rounded to hundredths of a degree, into a single long.
+     */
+    private static long packKey(Coordinates coordinates) {
+        long lat = Math.round(coordinates.getLat() * 100);
+        long lon = Math.round(coordinates.getLon() * 100);
+        return (lat << 32) | (lon & 0xFFFFFFFFL);
+    }
+
+    private static long location(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int slabIndex(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Open addressing hash map from packed coordinates to entry locations, so the index holds no objects per entry.
+     * Uses linear probing with backward shift deletion. Only accessed under the store's lock.
+     */
+    private static final class LocationIndex {
+
+        static final long ABSENT = -1L;
+
+        // Would need a latitude of Integer.MIN_VALUE hundredths of a degree, so it can't clash with a real key
+        private static final long FREE = Long.MIN_VALUE;
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] keys;
+        private long[] locations;
+        private int size;
+
+        LocationIndex() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(long key) {
+            int slot = find(key);
+            return keys[slot] == FREE ? ABSENT : locations[slot];
+        }
+
+        void put(long key, long location) {
+            int slot = find(key);
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                size++;
+            }
+            locations[slot] = location;
+            if (size * 4 > keys.length * 3) {
+                resize();
+            }
+        }
+
+        long remove(long key) {
+            int gap = find(key);
+            if (keys[gap] == FREE) {
+                return ABSENT;
+            }
+            long location = locations[gap];
+            int mask = keys.length - 1;
+            for (int slot = (gap + 1) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+                // Move the entry back into the gap unless its home slot lies between the gap and where it is now
+                int home = home(keys[slot]);
+                if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                    keys[gap] = keys[slot];
+                    locations[gap] = locations[slot];
+                    gap = slot;
+                }
+            }
+            keys[gap] = FREE;
+            size--;
+            return location;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = home(key);
+            while (keys[slot] != FREE && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int home(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldLocations = locations;
+            allocate(oldKeys.length * 2);
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != FREE) {
+                    keys[find(oldKeys[slot])] = oldKeys[slot];
+                    locations[find(oldKeys[slot])] = oldLocations[slot];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, FREE);
+            locations = new long[capacity];
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.mcallistertyler.event.weather.api.service;
+
+import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.RouteForecastRequest;
+import io.github.mcallistertyler.event.weather.api.domain.RouteWaypointForecast;
+import io.github.mcallistertyler.event.weather.api.domain.Waypoint;
+import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class RouteForecastService {
+
+    private static final Logger log = LoggerFactory.getLogger(RouteForecastService.class);
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    // MET entries are at most 6 hours apart, so a waypoint further than that from its nearest entry is outside the forecast
+    private static final Duration MAX_DISTANCE_FROM_FORECAST = Duration.ofHours(6);
+
+    private final MetForecastService metForecastService;
+    private final ForecastAdmissionControl forecastAdmissionControl;
+    private final ExecutorService routeForecastExecutor;
+    private final long fetchTimeoutMillis;
+
+    public RouteForecastService(MetForecastService metForecastService,
+                                ForecastAdmissionControl forecastAdmissionControl,
+                                @Qualifier("routeForecastExecutor") ExecutorService routeForecastExecutor,
+                                @Value("${api.route.fetch-timeout-millis}") long fetchTimeoutMillis) {
+        this.metForecastService = metForecastService;
+        this.forecastAdmissionControl = forecastAdmissionControl;
+        this.routeForecastExecutor = routeForecastExecutor;
+        this.fetchTimeoutMillis = fetchTimeoutMillis;
+    }
+
+    /**
+     * Works out when each waypoint is expected to be passed. Waypoints with their own expected time keep it,
+     * the rest are placed along the route from the start time and pace. Returns empty if a waypoint has no
+     * expected time and no start time and pace were given.
+     */
+    public Optional<List<Instant>> expectedPassingTimes(RouteForecastRequest routeForecastRequest) {
+        List<Waypoint> waypoints = routeForecastRequest.waypoints();
+        boolean hasPace = routeForecastRequest.startDateTime() != null
+                && routeForecastRequest.paceSecondsPerKm() != null
+                && routeForecastRequest.paceSecondsPerKm() > 0;
+
+        List<Instant> passingTimes = new ArrayList<>(waypoints.size());
+        double distanceKm = 0.0;
+        for (int i = 0; i < waypoints.size(); i++) {
+            Waypoint waypoint = waypoints.get(i);
+            if (i > 0) {
+                distanceKm += distanceKm(waypoints.get(i - 1), waypoint);
+            }
+            if (waypoint.expectedTime() != null) {
+                passingTimes.add(waypoint.expectedTime());
+            } else if (hasPace) {
+                long secondsFromStart = Math.round(distanceKm * routeForecastRequest.paceSecondsPerKm());
+                passingTimes.add(routeForecastRequest.startDateTime().plus(Duration.ofSeconds(secondsFromStart)));
+            } else {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(passingTimes);
+    }
+
+    /**
+     * The distinct forecast locations along the route, in route order. Waypoints that round to the same
+     * coordinates share a forecast.
+     */
+    public Set<Coordinates> uniqueLocations(List<Waypoint> waypoints) {
+        Set<Coordinates> locations = new LinkedHashSet<>();
+        waypoints.forEach(waypoint -> locations.add(new Coordinates(waypoint.lat(), waypoint.lon())));
+        return locations;
+    }
+
+    public List<RouteWaypointForecast> getRouteForecast(List<Waypoint> waypoints, List<Instant> passingTimes) {
+        Map<Coordinates, Optional<MetForecastResponse>> forecasts = getForecasts(uniqueLocations(waypoints));
+
+        List<RouteWaypointForecast> routeForecast = new ArrayList<>(waypoints.size());
+        for (int i = 0; i < waypoints.size(); i++) {
+            Waypoint waypoint = waypoints.get(i);
+            Instant passingTime = passingTimes.get(i);
+            WeatherData weatherData = forecasts.get(new Coordinates(waypoint.lat(), waypoint.lon()))
+                    .flatMap(forecast -> forecast.nearestWeatherData(passingTime))
+                    .filter(nearest -> Duration.between(nearest.time(), passingTime).abs().compareTo(MAX_DISTANCE_FROM_FORECAST) <= 0)
+                    .orElse(null);
+            routeForecast.add(new RouteWaypointForecast(waypoint.lat(), waypoint.lon(), passingTime, weatherData));
+        }
+        return routeForecast;
+    }
+
+    /**
+     * Fetches the forecast for each location, running uncached ones on the route executor. Locations that can't be
+     * queued, can't get an upstream permit or don't finish within the fetch timeout are left without a forecast.
+     */
+    private Map<Coordinates, Optional<MetForecastResponse>> getForecasts(Set<Coordinates> locations) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fetchTimeoutMillis);
+        Map<Coordinates, CompletableFuture<Optional<MetForecastResponse>>> pendingForecasts = new LinkedHashMap<>();
+        for (Coordinates coordinates : locations) {
+            if (metForecastService.isCachedAndFresh(coordinates)) {
+                pendingForecasts.put(coordinates, CompletableFuture.completedFuture(metForecastService.getForecast(coordinates)));
+                continue;
+            }
+            try {
+                pendingForecasts.put(coordinates, CompletableFuture.supplyAsync(() -> fetchWithPermit(coordinates, deadline), routeForecastExecutor));
+            } catch (RejectedExecutionException e) {
+                log.warn("Route forecast queue is full. Skipping forecast for coordinates: {}", coordinates);
+                pendingForecasts.put(coordinates, CompletableFuture.completedFuture(Optional.empty()));
+            }
+        }
+
+        Map<Coordinates, Optional<MetForecastResponse>> forecasts = new HashMap<>();
+        pendingForecasts.forEach((coordinates, pendingForecast) -> {
+            try {
+                long remainingNanos = Math.max(0, deadline - System.nanoTime());
+                forecasts.put(coordinates, pendingForecast.get(remainingNanos, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                log.error("Timed out waiting for route forecast for coordinates: {}", coordinates);
+                pendingForecast.cancel(false);
+                forecasts.put(coordinates, Optional.empty());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                forecasts.put(coordinates, Optional.empty());
+            } catch (Exception e) {
+                log.error("Failed to retrieve route forecast for coordinates: {}", coordinates, e);
+                forecasts.put(coordinates, Optional.empty());
+            }
+        });
+        return forecasts;
+    }
+
+    /**
+     * Fetches a forecast while holding an upstream permit, so the permit is held for exactly as long as the MET call
+     * runs, even if the request waiting on it has already timed out. Fetches that can't get a permit before the
+     * deadline are skipped.
+     */
+    private Optional<MetForecastResponse> fetchWithPermit(Coordinates coordinates, long deadline) {
+        if (metForecastService.isCachedAndFresh(coordinates)) {
+            return metForecastService.getForecast(coordinates);
+        }
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+            return Optional.empty();
+        }
+        try (Admission permit = forecastAdmissionControl.acquireFetchPermit(remainingNanos, TimeUnit.NANOSECONDS)) {
+            if (!permit.isAdmitted()) {
+                log.warn("No upstream permit before the route deadline. Skipping forecast for coordinates: {}", coordinates);
+                return Optional.empty();
+            }
+            return metForecastService.getForecast(coordinates);
+        }
+    }
+
+    private double distanceKm(Waypoint from, Waypoint to) {
+        double lat1 = Math.toRadians(from.lat());
+        double lat2 = Math.toRadians(to.lat());
+        double deltaLat = lat2 - lat1;
+        double deltaLon = Math.toRadians(to.lon() - from.lon());
+        double a = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(deltaLon / 2) * Math.sin(deltaLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(a));
+    }
+}
@@ -0,0 +1,236 @@
+package io.github.mcallistertyler.event.weather.api;
+
+import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastField;
+import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
+import io.github.mcallistertyler.event.weather.api.rest.ApiController;
+import io.github.mcallistertyler.event.weather.api.service.Admission;
+import io.github.mcallistertyler.event.weather.api.service.ForecastAdmissionControl;
+import io.github.mcallistertyler.event.weather.api.service.MetForecastService;
+import io.github.mcallistertyler.event.weather.api.service.RouteForecastService;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+
+import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.hasKey;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+public class ApiControllerTest {
+
+    @Mock
+    private MetForecastService metForecastService;
+
+    @Mock
+    private ForecastAdmissionControl forecastAdmissionControl;
+
+    @Mock
+    private RouteForecastService routeForecastService;
+
+    private MockMvc mockMvc;
+
+    private final String startDateTime = Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS).toString();
+    private final String endDateTime = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS).toString();
+
+    @BeforeEach
+    public void setUp() {
+        ApiController apiController = new ApiController(metForecastService, forecastAdmissionControl, routeForecastService);
+        ReflectionTestUtils.setField(apiController, "maxRouteWaypoints", 100);
+        mockMvc = MockMvcBuilders.standaloneSetup(apiController).build();
+    }
+
+    private void forecastWithoutAirTemperature() {
+        Instant time = Instant.now().plus(2, ChronoUnit.HOURS).truncatedTo(ChronoUnit.HOURS);
+        MetForecastResponse forecast = new MetForecastResponse(Instant.now(), null, null, List.of(new WeatherData(time, 2.2, null)));
+        when(forecastAdmissionControl.admit(any(), any(), any(Coordinates.class)))
+                .thenReturn(new Admission(Admission.Decision.CACHED, null, 0, 0));
+        when(metForecastService.getForecast(any())).thenReturn(Optional.of(forecast));
+    }
+
+    @Test
+    public void rejectsUnknownField() throws Exception {
+        mockMvc.perform(get("/forecast/extended")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime)
+                        .param("fields", "snowfall_amount"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value(400));
+        verify(metForecastService, never()).getForecast(any());
+    }
+
+    @Test
+    public void rejectsFieldThatIsNotConfigured() throws Exception {
+        when(metForecastService.availableFields()).thenReturn(EnumSet.of(ForecastField.WIND_SPEED, ForecastField.AIR_TEMPERATURE));
+
+        mockMvc.perform(get("/forecast/extended")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime)
+                        .param("fields", "wind_speed,relative_humidity"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value(400));
+        verify(metForecastService, never()).getForecast(any());
+    }
+
+    @Test
+    public void defaultFieldsKeepFullWeatherData() throws Exception {
+        forecastWithoutAirTemperature();
+
+        mockMvc.perform(get("/forecast/extended")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.weatherData[0]", aMapWithSize(3)))
+                .andExpect(jsonPath("$.weatherData[0]", hasKey("time")))
+                .andExpect(jsonPath("$.weatherData[0].windSpeed").value(2.2))
+                .andExpect(jsonPath("$.weatherData[0]", hasKey("airTemperature")));
+    }
+
+    @Test
+    public void returnsOnlyRequestedFields() throws Exception {
+        forecastWithoutAirTemperature();
+        when(metForecastService.availableFields()).thenReturn(EnumSet.of(ForecastField.WIND_SPEED, ForecastField.AIR_TEMPERATURE));
+
+        mockMvc.perform(get("/forecast/extended")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime)
+                        .param("fields", "wind_speed"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.weatherData[0]", hasKey("time")))
+                .andExpect(jsonPath("$.weatherData[0].windSpeed").value(2.2))
+                .andExpect(jsonPath("$.weatherData[0].airTemperature").doesNotExist());
+    }
+
+    @Test
+    public void explicitDefaultFieldsOnlyReturnFieldsWithValues() throws Exception {
+        forecastWithoutAirTemperature();
+        when(metForecastService.availableFields()).thenReturn(EnumSet.of(ForecastField.WIND_SPEED, ForecastField.AIR_TEMPERATURE));
+
+        mockMvc.perform(get("/forecast/extended")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime)
+                        .param("fields", "wind_speed,air_temperature"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.weatherData[0]", aMapWithSize(2)))
+                .andExpect(jsonPath("$.weatherData[0].windSpeed").value(2.2))
+                .andExpect(jsonPath("$.weatherData[0].airTemperature").doesNotExist());
+    }
+
+    @Test
+    public void blankFieldsKeepFullWeatherData() throws Exception {
+        forecastWithoutAirTemperature();
+
+        mockMvc.perform(get("/forecast/extended")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime)
+                        .param("fields", ""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.weatherData[0]", aMapWithSize(3)))
+                .andExpect(jsonPath("$.weatherData[0]", hasKey("airTemperature")));
+        verify(metForecastService, never()).availableFields();
+    }
+
+    @Test
+    public void shedsOverloadedRequestWithRetryAfter() throws Exception {
+        when(forecastAdmissionControl.admit(eq("client"), any(), any(Coordinates.class)))
+                .thenReturn(new Admission(Admission.Decision.OVERLOADED, null, 0, 2));
+
+        mockMvc.perform(get("/forecast/extended")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime)
+                        .header(ApiController.API_KEY_HEADER, "client"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"))
+                .andExpect(jsonPath("$.code").value(503));
+        verify(metForecastService, never()).getForecast(any());
+    }
+
+    @Test
+    public void rejectsClientOverQuotaWithRetryAfter() throws Exception {
+        when(forecastAdmissionControl.admit(eq("client"), eq("127.0.0.1"), any(Coordinates.class)))
+                .thenReturn(new Admission(Admission.Decision.QUOTA_EXCEEDED, null, 0, 1));
+
+        mockMvc.perform(get("/forecast")
+                        .param("lat", "59.911")
+                        .param("lon", "10.750")
+                        .param("startDateTime", startDateTime)
+                        .param("endDateTime", endDateTime)
+                        .header(ApiController.API_KEY_HEADER, "client"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(jsonPath("$.code").value(429));
+        verify(metForecastService, never()).getForecast(any());
+    }
+
+    @Test
+    public void rejectsRouteWithWaypointMissingCoordinates() throws Exception {
+        mockMvc.perform(post("/forecast/route")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"waypoints": [
+                                  {"lat": 59.911, "lon": 10.750, "expectedTime": "%s"},
+                                  {"lon": 10.689, "expectedTime": "%s"}
+                                ]}
+                                """.formatted(startDateTime, startDateTime)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value(400));
+        verify(forecastAdmissionControl, never()).admitRoute(any(), any(), anyCollection());
+    }
+
+    @Test
+    public void rejectsRouteWithLaterWaypointOutsideNextWeek() throws Exception {
+        Instant firstPassingTime = Instant.parse(startDateTime);
+        Instant lastPassingTime = firstPassingTime.plus(10, ChronoUnit.DAYS);
+        when(routeForecastService.expectedPassingTimes(any())).thenReturn(Optional.of(List.of(firstPassingTime, lastPassingTime)));
+
+        mockMvc.perform(post("/forecast/route")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"waypoints": [
+                                  {"lat": 59.911, "lon": 10.750, "expectedTime": "%s"},
+                                  {"lat": 59.921, "lon": 10.689, "expectedTime": "%s"}
+                                ]}
+                                """.formatted(firstPassingTime, lastPassingTime)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value(400));
+        verify(forecastAdmissionControl, never()).admitRoute(any(), any(), anyCollection());
+    }
+}
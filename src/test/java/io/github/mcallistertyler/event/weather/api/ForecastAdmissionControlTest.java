@@ -0,0 +1,187 @@
+package io.github.mcallistertyler.event.weather.api;
+
+import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import io.github.mcallistertyler.event.weather.api.service.Admission;
+import io.github.mcallistertyler.event.weather.api.service.ForecastAdmissionControl;
+import io.github.mcallistertyler.event.weather.api.service.MetForecastService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ForecastAdmissionControlTest {
+
+    private static final String CLIENT_ADDRESS = "192.0.2.10";
+
+    private final Coordinates cachedCoordinates = new Coordinates(59.911, 10.750);
+    private final Coordinates uncachedCoordinates = new Coordinates(60.391, 5.322);
+    private final Coordinates otherUncachedCoordinates = new Coordinates(63.430, 10.395);
+
+    @Mock
+    private MetForecastService metForecastService;
+
+    private ForecastAdmissionControl createAdmissionControl(int maxConcurrentUpstreamRequests,
+                                                            int maxQueuedUpstreamRequests,
+                                                            long maxQueueWaitMillis,
+                                                            double clientUpstreamRequestsPerSecond,
+                                                            long retryAfterSeconds) {
+        ForecastAdmissionControl admissionControl = new ForecastAdmissionControl(metForecastService, maxConcurrentUpstreamRequests,
+                maxQueuedUpstreamRequests, maxQueueWaitMillis, clientUpstreamRequestsPerSecond, retryAfterSeconds);
+        ReflectionTestUtils.setField(admissionControl, "clientKeys", Set.of("client-a", "client-b", "client-c"));
+        return admissionControl;
+    }
+
+    @Test
+    public void shedsUpstreamRequestsOverCapacityWhileCacheHitsFlow() {
+        when(metForecastService.isCachedAndFresh(cachedCoordinates)).thenReturn(true);
+        when(metForecastService.isCachedAndFresh(uncachedCoordinates)).thenReturn(false);
+        when(metForecastService.isCachedAndFresh(otherUncachedCoordinates)).thenReturn(false);
+        ForecastAdmissionControl admissionControl = createAdmissionControl(1, 0, 0, 100, 2);
+
+        try (Admission inFlight = admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, inFlight.decision());
+
+            Admission shed = admissionControl.admit("client-b", CLIENT_ADDRESS, otherUncachedCoordinates);
+            assertEquals(Admission.Decision.OVERLOADED, shed.decision());
+            assertFalse(shed.isAdmitted());
+            assertEquals(2, shed.retryAfterSeconds());
+
+            try (Admission cacheHit = admissionControl.admit("client-a", CLIENT_ADDRESS, cachedCoordinates)) {
+                assertEquals(Admission.Decision.CACHED, cacheHit.decision());
+            }
+        }
+
+        try (Admission afterRelease = admissionControl.admit("client-c", CLIENT_ADDRESS, otherUncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, afterRelease.decision());
+        }
+    }
+
+    @Test
+    public void appliesUpstreamQuotaPerApiKey() {
+        when(metForecastService.isCachedAndFresh(uncachedCoordinates)).thenReturn(false);
+        ForecastAdmissionControl admissionControl = createAdmissionControl(10, 10, 0, 0.001, 1);
+
+        try (Admission first = admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, first.decision());
+        }
+        try (Admission second = admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates)) {
+            assertEquals(Admission.Decision.QUOTA_EXCEEDED, second.decision());
+        }
+        try (Admission otherClient = admissionControl.admit("client-b", CLIENT_ADDRESS, uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, otherClient.decision());
+        }
+    }
+
+    @Test
+    public void doesNotSpendQuotaOnRequestsShedForLoad() {
+        when(metForecastService.isCachedAndFresh(uncachedCoordinates)).thenReturn(false);
+        when(metForecastService.isCachedAndFresh(otherUncachedCoordinates)).thenReturn(false);
+        ForecastAdmissionControl admissionControl = createAdmissionControl(1, 0, 0, 0.001, 1);
+
+        try (Admission inFlight = admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, inFlight.decision());
+            assertEquals(Admission.Decision.OVERLOADED, admissionControl.admit("client-b", CLIENT_ADDRESS, otherUncachedCoordinates).decision());
+        }
+
+        try (Admission afterRelease = admissionControl.admit("client-b", CLIENT_ADDRESS, otherUncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, afterRelease.decision());
+        }
+    }
+
+    @Test
+    public void releasesPermitWhenQuotaExceeded() {
+        when(metForecastService.isCachedAndFresh(uncachedCoordinates)).thenReturn(false);
+        ForecastAdmissionControl admissionControl = createAdmissionControl(1, 0, 0, 0.001, 1);
+
+        admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates).close();
+        assertEquals(Admission.Decision.QUOTA_EXCEEDED, admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates).decision());
+        try (Admission otherClient = admissionControl.admit("client-b", CLIENT_ADDRESS, uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, otherClient.decision());
+        }
+    }
+
+    @Test
+    public void chargesRouteQuotaPerUncachedLocationWithoutHoldingPermits() {
+        Coordinates thirdUncachedCoordinates = new Coordinates(69.649, 18.956);
+        when(metForecastService.isCachedAndFresh(cachedCoordinates)).thenReturn(true);
+        when(metForecastService.isCachedAndFresh(uncachedCoordinates)).thenReturn(false);
+        ForecastAdmissionControl admissionControl = createAdmissionControl(2, 0, 0, 2, 1);
+
+        List<Coordinates> route = List.of(cachedCoordinates, uncachedCoordinates, otherUncachedCoordinates, thirdUncachedCoordinates);
+        try (Admission routeAdmission = admissionControl.admitRoute("client-a", CLIENT_ADDRESS, route)) {
+            assertEquals(Admission.Decision.UPSTREAM, routeAdmission.decision());
+            assertEquals(0, routeAdmission.permitCount());
+
+            assertEquals(Admission.Decision.QUOTA_EXCEEDED, admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates).decision());
+            try (Admission otherClient = admissionControl.admit("client-b", CLIENT_ADDRESS, uncachedCoordinates)) {
+                assertEquals(Admission.Decision.UPSTREAM, otherClient.decision());
+            }
+        }
+
+        assertEquals(Admission.Decision.CACHED, admissionControl.admitRoute("client-c", CLIENT_ADDRESS, List.of(cachedCoordinates)).decision());
+    }
+
+    @Test
+    public void fetchPermitsAreSharedWithSingleRequests() {
+        when(metForecastService.isCachedAndFresh(uncachedCoordinates)).thenReturn(false);
+        ForecastAdmissionControl admissionControl = createAdmissionControl(1, 0, 0, 100, 1);
+
+        try (Admission fetchPermit = admissionControl.acquireFetchPermit(0, TimeUnit.MILLISECONDS)) {
+            assertEquals(Admission.Decision.UPSTREAM, fetchPermit.decision());
+            assertEquals(1, fetchPermit.permitCount());
+            assertEquals(Admission.Decision.OVERLOADED, admissionControl.acquireFetchPermit(10, TimeUnit.MILLISECONDS).decision());
+            assertEquals(Admission.Decision.OVERLOADED, admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates).decision());
+        }
+
+        try (Admission afterRelease = admissionControl.acquireFetchPermit(0, TimeUnit.MILLISECONDS)) {
+            assertEquals(Admission.Decision.UPSTREAM, afterRelease.decision());
+        }
+    }
+
+    @Test
+    public void limitsCallersWithoutConfiguredKeyPerAddress() {
+        when(metForecastService.isCachedAndFresh(uncachedCoordinates)).thenReturn(false);
+        ForecastAdmissionControl admissionControl = createAdmissionControl(10, 10, 0, 0.001, 1);
+
+        try (Admission keyless = admissionControl.admit(null, "192.0.2.20", uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, keyless.decision());
+        }
+        try (Admission madeUpKey = admissionControl.admit("made-up", "192.0.2.20", uncachedCoordinates)) {
+            assertEquals(Admission.Decision.QUOTA_EXCEEDED, madeUpKey.decision());
+        }
+        try (Admission otherAddress = admissionControl.admit(null, "192.0.2.21", uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, otherAddress.decision());
+        }
+        try (Admission configuredKey = admissionControl.admit("client-a", "192.0.2.20", uncachedCoordinates)) {
+            assertEquals(Admission.Decision.UPSTREAM, configuredKey.decision());
+        }
+    }
+
+    @Test
+    public void retryAfterCoversQuotaDebt() {
+        ForecastAdmissionControl admissionControl = createAdmissionControl(1, 0, 0, 5, 1);
+        List<Coordinates> route = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            route.add(new Coordinates(59.0 + i * 0.1, 10.0));
+        }
+
+        try (Admission routeAdmission = admissionControl.admitRoute("client-a", CLIENT_ADDRESS, route)) {
+            assertEquals(Admission.Decision.UPSTREAM, routeAdmission.decision());
+        }
+        // 16 requests at 5 per second are paid back after 3.2s, and the next one fits in the burst after 2.4s
+        Admission shed = admissionControl.admit("client-a", CLIENT_ADDRESS, uncachedCoordinates);
+        assertEquals(Admission.Decision.QUOTA_EXCEEDED, shed.decision());
+        assertEquals(3, shed.retryAfterSeconds());
+    }
+}
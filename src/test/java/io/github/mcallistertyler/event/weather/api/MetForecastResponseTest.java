@@ -3,16 +3,24 @@ package io.github.mcallistertyler.event.weather.api;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastField;
 import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.ProjectedWeatherData;
+import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.junit.jupiter.api.Test;
 import org.springframework.util.ResourceUtils;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -33,4 +41,47 @@ public class MetForecastResponseTest {
         assertNotNull(metForecastResponse.get().updatedAt());
     }
 
+    @Test
+    public void testNearestWeatherData() {
+        WeatherData eleven = new WeatherData(Instant.parse("2025-03-15T11:00:00Z"), 2.2, 5.0);
+        WeatherData twelve = new WeatherData(Instant.parse("2025-03-15T12:00:00Z"), 2.5, 5.4);
+        WeatherData eighteen = new WeatherData(Instant.parse("2025-03-15T18:00:00Z"), 3.1, 1.2);
+        MetForecastResponse metForecastResponse = new MetForecastResponse(Instant.parse("2025-03-15T11:26:59Z"), "", "", List.of(eleven, twelve, eighteen));
+
+        assertEquals(eleven, metForecastResponse.nearestWeatherData(Instant.parse("2025-03-15T08:00:00Z")).orElseThrow());
+        assertEquals(eleven, metForecastResponse.nearestWeatherData(Instant.parse("2025-03-15T11:29:00Z")).orElseThrow());
+        assertEquals(twelve, metForecastResponse.nearestWeatherData(Instant.parse("2025-03-15T11:31:00Z")).orElseThrow());
+        assertEquals(twelve, metForecastResponse.nearestWeatherData(Instant.parse("2025-03-15T14:59:00Z")).orElseThrow());
+        assertEquals(eighteen, metForecastResponse.nearestWeatherData(Instant.parse("2025-03-15T15:01:00Z")).orElseThrow());
+        assertEquals(eighteen, metForecastResponse.nearestWeatherData(Instant.parse("2025-03-16T00:00:00Z")).orElseThrow());
+    }
+
+    @Test
+    public void testExtendedFieldParsingAndProjection() throws IOException {
+        Path resourcePath = Paths.get(ResourceUtils.getFile("classpath:" + "example-met-response.json").toURI());
+        JsonNode jsonNode = objectMapper.readTree(Files.readString(resourcePath));
+        EnumSet<ForecastField> fields = EnumSet.of(ForecastField.WIND_FROM_DIRECTION,
+                ForecastField.RELATIVE_HUMIDITY,
+                ForecastField.PRECIPITATION_AMOUNT,
+                ForecastField.SYMBOL_CODE);
+        MetForecastResponse metForecastResponse = MetForecastResponse.parseMetResponse(jsonNode, "", "", fields).orElseThrow();
+
+        assertEquals(fields, metForecastResponse.fieldValues().fields());
+        ProjectedWeatherData defaultFields = metForecastResponse.projectWeatherData(0, MetForecastResponse.DEFAULT_FIELDS);
+        assertEquals(List.of("windSpeed", "airTemperature"), List.copyOf(defaultFields.fields().keySet()));
+
+        ProjectedWeatherData first = metForecastResponse.projectWeatherData(0, EnumSet.of(ForecastField.WIND_SPEED, ForecastField.SYMBOL_CODE, ForecastField.RELATIVE_HUMIDITY));
+        assertEquals(Instant.parse("2025-03-15T11:00:00Z"), first.time());
+        assertEquals(List.of("windSpeed", "relativeHumidity", "symbolCode"), List.copyOf(first.fields().keySet()));
+        assertEquals(Map.of("windSpeed", 2.2, "symbolCode", "partlycloudy_day", "relativeHumidity", 59.2), first.fields());
+
+        int sixHourIndex = metForecastResponse.nearestWeatherDataIndex(Instant.parse("2025-03-19T00:00:00Z"));
+        ProjectedWeatherData sixHourly = metForecastResponse.projectWeatherData(sixHourIndex, EnumSet.of(ForecastField.PRECIPITATION_AMOUNT, ForecastField.SYMBOL_CODE));
+        assertEquals(Map.of("precipitationAmount", 0.0, "symbolCode", "cloudy"), sixHourly.fields());
+
+        int lastIndex = metForecastResponse.weatherDataList().size() - 1;
+        ProjectedWeatherData last = metForecastResponse.projectWeatherData(lastIndex, EnumSet.of(ForecastField.SYMBOL_CODE, ForecastField.WIND_FROM_DIRECTION));
+        assertEquals(List.of("windFromDirection"), List.copyOf(last.fields().keySet()));
+    }
+
 }
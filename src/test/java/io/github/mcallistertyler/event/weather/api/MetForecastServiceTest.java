@@ -5,6 +5,7 @@ import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
 import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
 import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
 import io.github.mcallistertyler.event.weather.api.service.MetForecastService;
+import io.github.mcallistertyler.event.weather.api.service.OffHeapForecastStore;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -13,8 +14,13 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -25,6 +31,7 @@ import okhttp3.ResponseBody;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -33,9 +40,11 @@ import org.springframework.util.ResourceUtils;
 
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -49,6 +58,9 @@ public class MetForecastServiceTest {
     @Mock
     private Call call;
 
+    @Mock
+    private OffHeapForecastStore offHeapForecastStore;
+
     @InjectMocks
     private MetForecastService metForecastService;
 
@@ -242,5 +254,91 @@ public class MetForecastServiceTest {
         verify(okHttpClient, times(0)).newCall(any());
     }
 
+    @Test
+    public void emitsFlightRecorderEventsForLookupAndFetch(@TempDir Path tempDir) throws IOException {
+        String expiresValue = instantToHttpDateHeader(Instant.now().plus(1, ChronoUnit.HOURS));
+        String lastModifiedValue = instantToHttpDateHeader(Instant.now().plus(30, ChronoUnit.MINUTES));
+        Response dummyResponse = createDummySuccessResponse(exampleJsonResponse, expiresValue, lastModifiedValue);
+        when(okHttpClient.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(dummyResponse);
+
+        Path recordingPath = tempDir.resolve("forecast.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.github.mcallistertyler.ForecastLookup");
+            recording.enable("io.github.mcallistertyler.MetFetch");
+            recording.start();
+            metForecastService.getForecast(new Coordinates(59.911, 10.750));
+            metForecastService.getForecast(new Coordinates(59.911, 10.750));
+            recording.stop();
+            recording.dump(recordingPath);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingPath);
+        List<String> cacheOutcomes = events.stream()
+                .filter(event -> event.getEventType().getName().equals("io.github.mcallistertyler.ForecastLookup"))
+                .map(event -> event.getString("cacheOutcome"))
+                .toList();
+        List<RecordedEvent> fetchEvents = events.stream()
+                .filter(event -> event.getEventType().getName().equals("io.github.mcallistertyler.MetFetch"))
+                .toList();
+
+        assertEquals(List.of("MISS", "HIT"), cacheOutcomes);
+        assertEquals(1, fetchEvents.size());
+        assertEquals(200, fetchEvents.get(0).getInt("statusCode"));
+        assertTrue(fetchEvents.get(0).getLong("responseBytes") > 0);
+        assertTrue(fetchEvents.get(0).getBoolean("parsed"));
+    }
+
+    @Test
+    public void recordsErrorOutcomeWhenForecastCannotBeLoaded(@TempDir Path tempDir) throws IOException {
+        when(okHttpClient.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(createDummyUnsuccessfulResponse());
+
+        Path recordingPath = tempDir.resolve("forecast.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.github.mcallistertyler.ForecastLookup");
+            recording.start();
+            metForecastService.getForecast(new Coordinates(59.911, 10.750));
+            recording.stop();
+            recording.dump(recordingPath);
+        }
+
+        List<RecordedEvent> lookupEvents = RecordingFile.readAllEvents(recordingPath).stream()
+                .filter(event -> event.getEventType().getName().equals("io.github.mcallistertyler.ForecastLookup"))
+                .toList();
+        assertEquals(1, lookupEvents.size());
+        assertEquals("ERROR", lookupEvents.get(0).getString("cacheOutcome"));
+        assertFalse(lookupEvents.get(0).getBoolean("forecastReturned"));
+    }
+
+    @Test
+    public void servesForecastEvictedFromHeapFromOffHeapStore() {
+        MetForecastService tieredService = new MetForecastService(okHttpClient, new OffHeapForecastStore(16 * 1024 * 1024, 1024 * 1024));
+        ReflectionTestUtils.setField(tieredService, "baseUrl", "test");
+        ReflectionTestUtils.setField(tieredService, "userAgent", "testUserAgent");
+        @SuppressWarnings("unchecked")
+        LoadingCache<Coordinates, MetForecastResponse> cache = (LoadingCache<Coordinates, MetForecastResponse>) ReflectionTestUtils.getField(tieredService, "forecastCache");
+        int maxCacheSize = (int) ReflectionTestUtils.getField(tieredService, "MAX_CACHE_SIZE");
 
+        Instant now = Instant.now();
+        String expiresValue = instantToHttpDateHeader(now.plus(1, ChronoUnit.HOURS));
+        Map<Coordinates, MetForecastResponse> forecasts = new LinkedHashMap<>();
+        for (int i = 0; i < maxCacheSize + 100; i++) {
+            WeatherData weatherData = new WeatherData(now.plus(1, ChronoUnit.HOURS), 1.0 + i, -7.0);
+            forecasts.put(new Coordinates(50.0 + i * 0.01, 10.0),
+                    new MetForecastResponse(now.minus(30, ChronoUnit.MINUTES), null, expiresValue, List.of(weatherData)));
+        }
+        forecasts.forEach(cache::put);
+
+        Coordinates evictedCoordinates = forecasts.keySet().stream()
+                .filter(coordinates -> !cache.asMap().containsKey(coordinates))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(tieredService.isCachedAndFresh(evictedCoordinates));
+
+        Optional<MetForecastResponse> response = tieredService.getForecast(evictedCoordinates);
+        assertEquals(Optional.of(forecasts.get(evictedCoordinates)), response);
+        verify(okHttpClient, never()).newCall(any());
+        assertTrue(cache.asMap().containsKey(evictedCoordinates));
+    }
 }
@@ -0,0 +1,135 @@
+package io.github.mcallistertyler.event.weather.api;
+
+import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastField;
+import io.github.mcallistertyler.event.weather.api.domain.ForecastFieldValues;
+import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
+import io.github.mcallistertyler.event.weather.api.service.OffHeapForecastStore;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapForecastStoreTest {
+
+    private MetForecastResponse createForecast(Instant updatedAt, int hours) {
+        String expires = DateTimeFormatter.RFC_1123_DATE_TIME
+                .withZone(ZoneId.of("GMT"))
+                .format(updatedAt.plus(1, ChronoUnit.HOURS));
+        List<WeatherData> weatherData = new ArrayList<>();
+        for (int i = 0; i < hours; i++) {
+            weatherData.add(new WeatherData(updatedAt.plus(i, ChronoUnit.HOURS), 1.5 + i, i % 2 == 0 ? -3.5 : null));
+        }
+        return new MetForecastResponse(updatedAt, null, expires, weatherData);
+    }
+
+    @Test
+    public void roundTripsForecastAndRemovesOnPromotion() {
+        OffHeapForecastStore store = new OffHeapForecastStore(1024 * 1024, 64 * 1024);
+        Coordinates coordinates = new Coordinates(59.911, 10.750);
+        MetForecastResponse forecast = createForecast(Instant.now(), 90);
+
+        store.put(coordinates, forecast);
+        assertTrue(store.isFresh(coordinates));
+
+        assertEquals(Optional.of(forecast), store.remove(coordinates));
+        assertEquals(Optional.empty(), store.remove(coordinates));
+        assertEquals(0, store.stats().entries());
+        assertEquals(0.5, store.stats().hitRate());
+    }
+
+    @Test
+    public void roundTripsValuesOutsideCompactEncoding() {
+        OffHeapForecastStore store = new OffHeapForecastStore(1024 * 1024, 64 * 1024);
+        Coordinates coordinates = new Coordinates(59.911, 10.750);
+        Instant updatedAt = Instant.parse("2025-03-15T11:26:59.5Z");
+        MetForecastResponse forecast = new MetForecastResponse(updatedAt, "Sat, 15 Mar 2025 11:26:59 GMT", null, List.of(
+                new WeatherData(updatedAt, 1.55, 40000.0),
+                new WeatherData(updatedAt.plus(30, ChronoUnit.MINUTES), null, -3.5)));
+
+        store.put(coordinates, forecast);
+
+        assertEquals(Optional.of(forecast), store.remove(coordinates));
+    }
+
+    @Test
+    public void roundTripsExtendedFieldColumns() {
+        OffHeapForecastStore store = new OffHeapForecastStore(1024 * 1024, 64 * 1024);
+        Coordinates coordinates = new Coordinates(59.911, 10.750);
+        Instant time = Instant.parse("2025-03-15T11:00:00Z");
+        Map<ForecastField, Object> columns = new EnumMap<>(ForecastField.class);
+        columns.put(ForecastField.RELATIVE_HUMIDITY, new double[] {59.2, Double.NaN, 61.0});
+        columns.put(ForecastField.PRECIPITATION_AMOUNT, new double[] {0.0, 0.15, Double.NaN});
+        columns.put(ForecastField.SYMBOL_CODE, new String[] {"cloudy", null, "cloudy"});
+        MetForecastResponse forecast = new MetForecastResponse(time, null, null, List.of(
+                new WeatherData(time, 1.0, 2.0),
+                new WeatherData(time.plus(1, ChronoUnit.HOURS), 3.0, null),
+                new WeatherData(time.plus(7, ChronoUnit.HOURS), null, -1.5)),
+                ForecastFieldValues.ofColumns(columns));
+
+        store.put(coordinates, forecast);
+
+        MetForecastResponse decoded = store.remove(coordinates).orElseThrow();
+        assertEquals(forecast, decoded);
+        assertNull(decoded.fieldValues().value(ForecastField.RELATIVE_HUMIDITY, 1));
+        assertNull(decoded.fieldValues().value(ForecastField.SYMBOL_CODE, 1));
+        assertEquals(0.15, decoded.fieldValues().value(ForecastField.PRECIPITATION_AMOUNT, 1));
+        assertEquals("cloudy", decoded.fieldValues().value(ForecastField.SYMBOL_CODE, 2));
+    }
+
+    @Test
+    public void evictsOldestSlabWhenFull() {
+        OffHeapForecastStore store = new OffHeapForecastStore(2 * 4096, 4096);
+        Instant now = Instant.now();
+        int forecasts = 50;
+        for (int i = 0; i < forecasts; i++) {
+            store.put(new Coordinates(59.0 + i, 10.0), createForecast(now, 24));
+        }
+
+        OffHeapForecastStore.Stats stats = store.stats();
+        assertEquals(2 * 4096, stats.allocatedBytes());
+        assertTrue(stats.evictions() > 0);
+        assertEquals(forecasts, stats.entries() + stats.evictions());
+        assertFalse(store.isFresh(new Coordinates(59.0, 10.0)));
+        assertTrue(store.isFresh(new Coordinates(59.0 + forecasts - 1, 10.0)));
+    }
+
+    @Test
+    public void keepsIndexConsistentAcrossGrowthAndRemovals() {
+        OffHeapForecastStore store = new OffHeapForecastStore(16 * 1024 * 1024, 1024 * 1024);
+        Instant now = Instant.now();
+        int forecasts = 5000;
+        for (int i = 0; i < forecasts; i++) {
+            store.put(new Coordinates(-45.0 + i * 0.01, -170.0 + i * 0.07), createForecast(now, 2));
+        }
+        for (int i = 0; i < forecasts; i += 2) {
+            assertTrue(store.remove(new Coordinates(-45.0 + i * 0.01, -170.0 + i * 0.07)).isPresent());
+        }
+
+        assertEquals(forecasts / 2, store.stats().entries());
+        for (int i = 0; i < forecasts; i++) {
+            assertEquals(i % 2 == 1, store.isFresh(new Coordinates(-45.0 + i * 0.01, -170.0 + i * 0.07)));
+        }
+    }
+
+    @Test
+    public void rejectsForecastLargerThanSlab() {
+        OffHeapForecastStore store = new OffHeapForecastStore(4096, 512);
+        store.put(new Coordinates(59.911, 10.750), createForecast(Instant.now(), 90));
+        assertEquals(1, store.stats().rejected());
+        assertEquals(0, store.stats().entries());
+    }
+}
@@ -0,0 +1,208 @@
+package io.github.mcallistertyler.event.weather.api;
+
+import io.github.mcallistertyler.event.weather.api.domain.Coordinates;
+import io.github.mcallistertyler.event.weather.api.domain.MetForecastResponse;
+import io.github.mcallistertyler.event.weather.api.domain.RouteForecastRequest;
+import io.github.mcallistertyler.event.weather.api.domain.RouteWaypointForecast;
+import io.github.mcallistertyler.event.weather.api.domain.Waypoint;
+import io.github.mcallistertyler.event.weather.api.domain.WeatherData;
+import io.github.mcallistertyler.event.weather.api.service.Admission;
+import io.github.mcallistertyler.event.weather.api.service.ForecastAdmissionControl;
+import io.github.mcallistertyler.event.weather.api.service.MetForecastService;
+import io.github.mcallistertyler.event.weather.api.service.RouteForecastService;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class RouteForecastServiceTest {
+
+    private final Instant startDateTime = Instant.parse("2025-03-17T09:00:00Z");
+
+    @Mock
+    private MetForecastService metForecastService;
+
+    private ExecutorService routeForecastExecutor;
+
+    private RouteForecastService routeForecastService;
+
+    @BeforeEach
+    public void setUp() {
+        routeForecastExecutor = Executors.newFixedThreadPool(2);
+        routeForecastService = new RouteForecastService(metForecastService,
+                new ForecastAdmissionControl(metForecastService, 16, 0, 0, 100, 1), routeForecastExecutor, 1000);
+    }
+
+    private MetForecastResponse createForecast() {
+        return new MetForecastResponse(startDateTime, null, null, List.of(new WeatherData(startDateTime, 2.0, 5.0)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        routeForecastExecutor.shutdownNow();
+    }
+
+    @Test
+    public void placesWaypointsAlongRouteFromPace() {
+        // One degree of longitude along the equator is 111.195 km
+        List<Waypoint> waypoints = List.of(
+                new Waypoint(0.0, 0.0, null),
+                new Waypoint(0.0, 1.0, null),
+                new Waypoint(0.0, 2.0, null));
+
+        List<Instant> passingTimes = routeForecastService.expectedPassingTimes(new RouteForecastRequest(waypoints, startDateTime, 300.0)).orElseThrow();
+
+        assertEquals(List.of(startDateTime, startDateTime.plusSeconds(33358), startDateTime.plusSeconds(66717)), passingTimes);
+    }
+
+    @Test
+    public void keepsExplicitTimesWhenMixedWithPace() {
+        Instant explicitTime = startDateTime.plus(2, ChronoUnit.HOURS);
+        List<Waypoint> waypoints = List.of(
+                new Waypoint(0.0, 0.0, null),
+                new Waypoint(0.0, 1.0, explicitTime),
+                new Waypoint(0.0, 2.0, null));
+
+        List<Instant> passingTimes = routeForecastService.expectedPassingTimes(new RouteForecastRequest(waypoints, startDateTime, 300.0)).orElseThrow();
+
+        assertEquals(List.of(startDateTime, explicitTime, startDateTime.plusSeconds(66717)), passingTimes);
+    }
+
+    @Test
+    public void noPassingTimesWithoutExpectedTimeOrPace() {
+        List<Waypoint> waypoints = List.of(
+                new Waypoint(0.0, 0.0, startDateTime),
+                new Waypoint(0.0, 1.0, null));
+
+        assertTrue(routeForecastService.expectedPassingTimes(new RouteForecastRequest(waypoints, null, null)).isEmpty());
+        assertTrue(routeForecastService.expectedPassingTimes(new RouteForecastRequest(waypoints, startDateTime, 0.0)).isEmpty());
+    }
+
+    @Test
+    public void groupsWaypointsSharingForecastLocation() {
+        List<Waypoint> waypoints = List.of(
+                new Waypoint(59.911, 10.750, null),
+                new Waypoint(60.391, 5.322, null),
+                new Waypoint(59.9112, 10.7501, null));
+
+        Set<Coordinates> locations = routeForecastService.uniqueLocations(waypoints);
+
+        assertEquals(List.of(new Coordinates(59.911, 10.750), new Coordinates(60.391, 5.322)), List.copyOf(locations));
+    }
+
+    @Test
+    public void returnsRemainingWaypointsWhenSomeLocationsFail() {
+        Coordinates oslo = new Coordinates(59.911, 10.750);
+        Coordinates bergen = new Coordinates(60.391, 5.322);
+        Coordinates trondheim = new Coordinates(63.430, 10.395);
+        MetForecastResponse forecast = new MetForecastResponse(startDateTime, null, null, List.of(
+                new WeatherData(startDateTime, 2.0, 5.0),
+                new WeatherData(startDateTime.plus(1, ChronoUnit.HOURS), 3.0, 6.0)));
+        when(metForecastService.isCachedAndFresh(oslo)).thenReturn(true);
+        when(metForecastService.getForecast(oslo)).thenReturn(Optional.of(forecast));
+        when(metForecastService.getForecast(bergen)).thenReturn(Optional.empty());
+        when(metForecastService.getForecast(trondheim)).thenThrow(new IllegalStateException("upstream failure"));
+
+        List<Waypoint> waypoints = List.of(
+                new Waypoint(59.911, 10.750, null),
+                new Waypoint(60.391, 5.322, null),
+                new Waypoint(63.430, 10.395, null));
+        Instant passingTime = startDateTime.plus(50, ChronoUnit.MINUTES);
+        List<RouteWaypointForecast> routeForecast = routeForecastService.getRouteForecast(waypoints, List.of(passingTime, passingTime, passingTime));
+
+        assertEquals(3, routeForecast.size());
+        assertNotNull(routeForecast.get(0).weatherData());
+        assertEquals(3.0, routeForecast.get(0).weatherData().windSpeed());
+        assertNull(routeForecast.get(1).weatherData());
+        assertNull(routeForecast.get(2).weatherData());
+    }
+
+    @Test
+    public void leavesWaypointsBeyondForecastWithoutWeatherData() {
+        Coordinates oslo = new Coordinates(59.911, 10.750);
+        MetForecastResponse forecast = new MetForecastResponse(startDateTime, null, null, List.of(
+                new WeatherData(startDateTime, 2.0, 5.0)));
+        when(metForecastService.isCachedAndFresh(oslo)).thenReturn(true);
+        when(metForecastService.getForecast(oslo)).thenReturn(Optional.of(forecast));
+
+        List<Waypoint> waypoints = List.of(
+                new Waypoint(59.911, 10.750, null),
+                new Waypoint(59.911, 10.750, null));
+        List<RouteWaypointForecast> routeForecast = routeForecastService.getRouteForecast(waypoints,
+                List.of(startDateTime.plus(6, ChronoUnit.HOURS), startDateTime.plus(7, ChronoUnit.HOURS)));
+
+        assertNotNull(routeForecast.get(0).weatherData());
+        assertNull(routeForecast.get(1).weatherData());
+    }
+
+    @Test
+    public void fetchesRouteLongerThanUpstreamPermitsInWaves() {
+        ForecastAdmissionControl admissionControl = new ForecastAdmissionControl(metForecastService, 1, 0, 0, 100, 1);
+        RouteForecastService wavedRouteForecastService = new RouteForecastService(metForecastService, admissionControl, routeForecastExecutor, 5000);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(metForecastService.getForecast(any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return Optional.of(createForecast());
+        });
+
+        List<Waypoint> waypoints = List.of(
+                new Waypoint(59.911, 10.750, null),
+                new Waypoint(60.391, 5.322, null),
+                new Waypoint(63.430, 10.395, null),
+                new Waypoint(69.649, 18.956, null));
+        List<RouteWaypointForecast> routeForecast = wavedRouteForecastService.getRouteForecast(waypoints,
+                List.of(startDateTime, startDateTime, startDateTime, startDateTime));
+
+        assertTrue(routeForecast.stream().allMatch(waypoint -> waypoint.weatherData() != null));
+        assertEquals(1, maxInFlight.get());
+    }
+
+    @Test
+    public void holdsUpstreamPermitUntilTimedOutFetchFinishes() throws InterruptedException {
+        ForecastAdmissionControl admissionControl = new ForecastAdmissionControl(metForecastService, 1, 0, 0, 100, 1);
+        RouteForecastService timingOutRouteForecastService = new RouteForecastService(metForecastService, admissionControl, routeForecastExecutor, 200);
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        when(metForecastService.getForecast(any())).thenAnswer(invocation -> {
+            fetchStarted.countDown();
+            releaseFetch.await();
+            return Optional.of(createForecast());
+        });
+
+        List<RouteWaypointForecast> routeForecast = timingOutRouteForecastService.getRouteForecast(
+                List.of(new Waypoint(59.911, 10.750, null)), List.of(startDateTime));
+
+        assertNull(routeForecast.get(0).weatherData());
+        assertTrue(fetchStarted.await(1, TimeUnit.SECONDS));
+        assertEquals(Admission.Decision.OVERLOADED, admissionControl.acquireFetchPermit(0, TimeUnit.MILLISECONDS).decision());
+
+        releaseFetch.countDown();
+        try (Admission afterFetch = admissionControl.acquireFetchPermit(1, TimeUnit.SECONDS)) {
+            assertEquals(Admission.Decision.UPSTREAM, afterFetch.decision());
+        }
+    }
+}